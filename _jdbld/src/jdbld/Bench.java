@@ -0,0 +1,45 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package jdbld;
+
+import static org.jdrupes.builder.api.Intent.*;
+
+import org.jdrupes.builder.api.MergedTestProject;
+import org.jdrupes.builder.core.AbstractProject;
+import org.jdrupes.builder.java.JavaProject;
+import org.jdrupes.builder.mvnrepo.MvnRepoLookup;
+
+public class Bench extends AbstractProject implements JavaProject {
+
+    public Bench() {
+        super(name("bench"));
+        dependency(Consume, project(Cli.class));
+        dependency(Consume, new MvnRepoLookup()
+            .resolve("org.openjdk.jmh:jmh-core:1.37",
+                "org.openjdk.jmh:jmh-generator-annprocess:1.37"));
+    }
+
+    public static class BenchTest extends AbstractProject
+            implements JavaProject, MergedTestProject {
+        public BenchTest() {
+            super(parent(Bench.class));
+            dependency(Consume, project(Bench.class));
+        }
+    }
+}
@@ -83,10 +83,12 @@ public class Root extends AbstractRootProject {
 
         dependency(Expose, project(Api.class));
         dependency(Expose, project(Core.class));
+        dependency(Expose, project(Cli.class));
+        dependency(Consume, project(Bench.class));
 
         // Supply overall javadoc
         generator(Javadoc::new).projects(Stream.of(this, project(Api.class),
-            project(Core.class)))
+            project(Core.class), project(Cli.class)))
             .destination(rootProject().directory().resolve("webpages/javadoc"))
             .tagletpath(new MvnRepoLookup()
                 .resolve("org.jdrupes.taglets:plantuml-taglet:3.1.0",
@@ -148,11 +150,16 @@ public class Root extends AbstractRootProject {
     private static void setupCommonGenerators(Project project) {
         if (project instanceof JavaProject) {
             if (!(project instanceof MergedTestProject)) {
-                project.generator(JavaCompiler::new)
+                var compiler = project.generator(JavaCompiler::new)
                     .addSources(Path.of("src"), "**/*.java")
                     .options("--release", "21");
                 project.generator(JavaResourceCollector::new)
                     .add(Path.of("resources"), "**/*");
+                if (project instanceof Bench) {
+                    // JMH generates the benchmarks' harness
+                    compiler.options("-proc:full");
+                    return;
+                }
                 setupArtifactGeneration(project);
             } else {
                 project.generator(JavaCompiler::new).addSources(Path.of("test"),
@@ -0,0 +1,215 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.jdrupes.gitversioning.api;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.api.MetricsListener.Phase;
+
+/**
+ * Reports how a version has been derived and what the derivation
+ * has cost.
+ *
+ * @param head the id of the commit that the version has been
+ * evaluated for, {@code null} if there are no commits yet
+ * @param candidates the tags considered, in the order in which they
+ * have been considered; tags rejected by the tag filter or because
+ * their version cannot be parsed come first, followed by the version
+ * tags in descending order of their versions up to the selected one
+ * @param version the version, {@code null} if the evaluation failed
+ * @param change the first change found after the selected tag, if any
+ * @param truncated whether the evaluation has been based on a
+ * {@link VersionEvaluator#historyTruncated() truncated history}
+ * @param durations the durations of the phases of the evaluation
+ * @param counts the counts reported during the evaluation
+ * @param failure the reason why the evaluation failed, {@code null}
+ * if it succeeded
+ * @see VersionEvaluator#explain()
+ */
+public record Explanation(ObjectId head, List<Candidate> candidates,
+        String version, Change change, boolean truncated,
+        Map<Phase, Duration> durations, Map<Counter, Long> counts,
+        String failure) {
+
+    /**
+     * The outcome of considering a tag.
+     */
+    public enum Outcome {
+        /** The tag is the latest version tag reachable from HEAD. */
+        SELECTED,
+        /** The tag has been rejected by the tag filter. */
+        FILTERED,
+        /** The version extracted from the tag cannot be parsed. */
+        UNPARSABLE,
+        /** The tagged commit is not reachable from HEAD. */
+        UNREACHABLE
+    }
+
+    /**
+     * A tag considered during the evaluation.
+     *
+     * @param tag the tag name (without {@code refs/tags/})
+     * @param version the version extracted by the tag filter,
+     * {@code null} if the tag has been filtered
+     * @param commit the tagged commit, {@code null} if it has not
+     * been resolved
+     * @param outcome the outcome
+     */
+    public record Candidate(String tag, String version, ObjectId commit,
+            Outcome outcome) {
+    }
+
+    /**
+     * The kinds of changes.
+     */
+    public enum ChangeKind {
+        /** A dirty file in the work tree. */
+        DIRTY,
+        /** A file modified by a commit since the selected tag. */
+        MODIFIED
+    }
+
+    /**
+     * A change that causes a version to differ from the tagged version.
+     *
+     * @param kind the kind of change
+     * @param path the changed file
+     */
+    public record Change(ChangeKind kind, Path path) {
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param head the head
+     * @param candidates the candidates
+     * @param version the version
+     * @param change the change
+     * @param truncated the truncated
+     * @param durations the durations
+     * @param counts the counts
+     * @param failure the failure
+     */
+    public Explanation {
+        candidates = List.copyOf(candidates);
+        durations = Map.copyOf(durations);
+        counts = Map.copyOf(counts);
+    }
+
+    /**
+     * Returns the selected candidate.
+     *
+     * @return the candidate, empty if no version tag is reachable
+     * from HEAD
+     */
+    public Optional<Candidate> selected() {
+        return candidates.stream()
+            .filter(c -> c.outcome() == Outcome.SELECTED).findFirst();
+    }
+
+    /**
+     * Renders the explanation as JSON object. Ids are rendered as
+     * hexadecimal strings, durations in the ISO-8601 format (see
+     * {@link Duration#toString()}). Phases and counters are rendered
+     * in the order of their declaration.
+     *
+     * @return the JSON
+     */
+    @SuppressWarnings("PMD.ConsecutiveLiteralAppends")
+    public String toJson() {
+        var json = new StringBuilder(256);
+        json.append("{\"head\":").append(quote(name(head)))
+            .append(",\"candidates\":[");
+        String sep = "";
+        for (var candidate : candidates) {
+            json.append(sep).append("{\"tag\":").append(quote(candidate.tag()))
+                .append(",\"version\":").append(quote(candidate.version()))
+                .append(",\"commit\":").append(quote(name(candidate.commit())))
+                .append(",\"outcome\":")
+                .append(quote(candidate.outcome().name())).append('}');
+            sep = ",";
+        }
+        json.append("],\"version\":").append(quote(version))
+            .append(",\"change\":");
+        if (change == null) {
+            json.append("null");
+        } else {
+            json.append("{\"kind\":").append(quote(change.kind().name()))
+                .append(",\"path\":").append(quote(change.path().toString()))
+                .append('}');
+        }
+        json.append(",\"truncated\":").append(truncated)
+            .append(",\"durations\":{");
+        sep = "";
+        for (var phase : Phase.values()) {
+            if (durations.containsKey(phase)) {
+                json.append(sep).append(quote(phase.name())).append(':')
+                    .append(quote(durations.get(phase).toString()));
+                sep = ",";
+            }
+        }
+        json.append("},\"counts\":{");
+        sep = "";
+        for (var counter : Counter.values()) {
+            if (counts.containsKey(counter)) {
+                json.append(sep).append(quote(counter.name())).append(':')
+                    .append(counts.get(counter));
+                sep = ",";
+            }
+        }
+        json.append("},\"failure\":").append(quote(failure)).append('}');
+        return json.toString();
+    }
+
+    private static String name(ObjectId id) {
+        return id == null ? null : id.getName();
+    }
+
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        var result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char chr = value.charAt(i);
+            switch (chr) {
+            case '"' -> result.append("\\\"");
+            case '\\' -> result.append("\\\\");
+            case '\n' -> result.append("\\n");
+            case '\r' -> result.append("\\r");
+            case '\t' -> result.append("\\t");
+            default -> {
+                if (chr < 0x20) {
+                    result.append(String.format("\\u%04x", (int) chr));
+                } else {
+                    result.append(chr);
+                }
+            }
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.jdrupes.gitversioning.api;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A {@link CompletableFuture} that is completed by a task running
+ * on an {@link Executor}. Unlike with
+ * {@link CompletableFuture#supplyAsync(Supplier, Executor)},
+ * {@link #cancel(boolean) cancelling} the future interrupts the
+ * thread that runs the task (if {@code mayInterruptIfRunning} is
+ * {@code true}). The evaluations provided by {@link VersionEvaluator}
+ * react to the interrupt by throwing a {@link CancellationException}.
+ *
+ * @param <T> the result type
+ */
+public final class InterruptibleFuture<T> extends CompletableFuture<T> {
+
+    private Thread runner;
+
+    private InterruptibleFuture() {
+        // Use factory method
+    }
+
+    /**
+     * Returns a new future that is completed with the value obtained
+     * by invoking the supplier on the executor. Tasks that have been
+     * cancelled before being started are not run.
+     *
+     * @param <T> the result type
+     * @param supplier the supplier
+     * @param executor the executor
+     * @return the future
+     */
+    public static <T> InterruptibleFuture<T> supplyAsync(
+            Supplier<T> supplier, Executor executor) {
+        var future = new InterruptibleFuture<T>();
+        executor.execute(() -> future.run(supplier));
+        return future;
+    }
+
+    @SuppressWarnings({ "PMD.AvoidCatchingThrowable",
+        "PMD.AvoidCatchingGenericException" })
+    private void run(Supplier<T> supplier) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+        try {
+            complete(supplier.get());
+        } catch (Throwable t) {
+            completeExceptionally(t);
+        } finally {
+            synchronized (this) {
+                runner = null;
+            }
+            if (isCancelled()) {
+                // Don't leak the interrupt to the executor's next task
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && mayInterruptIfRunning) {
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.api;
+
+import java.time.Duration;
+import java.util.ServiceLoader;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * SPI for receiving metrics about the evaluation of versions.
+ *
+ * <p>Listeners are registered with an evaluator using
+ * {@link VersionEvaluator#metricsListener(MetricsListener)} or globally
+ * for all evaluators using the {@link ServiceLoader} mechanism.
+ * Register global listeners in
+ * {@code META-INF/services/org.jdrupes.gitversioning.api.MetricsListener}.
+ *
+ * <p>Listeners are invoked synchronously by the thread that performs
+ * the evaluation, possibly by several threads concurrently. They must
+ * therefore be thread-safe and return quickly. Counts are reported
+ * as they become known, i.e. a single evaluation may report the same
+ * counter several times. Implementations may report only a subset of
+ * the counters, e.g. if the information is not available when using
+ * an external tool.
+ */
+public interface MetricsListener {
+
+    /**
+     * The phases of an evaluation.
+     */
+    enum Phase {
+        /** Listing, parsing and sorting the version tags. */
+        TAG_LISTING,
+        /** Determining the commits reachable from HEAD. */
+        REACHABILITY,
+        /** Evaluating the status of the work tree. */
+        STATUS,
+        /** Walking the history for files modified since the tag. */
+        MODIFIED_FILES,
+        /** Evaluating the versions of many commits in a single pass. */
+        HISTORY
+    }
+
+    /**
+     * The reported counts.
+     */
+    enum Counter {
+        /** Tags listed. */
+        TAGS_LISTED,
+        /** Tags accepted by the tag filter and parsed as version. */
+        TAGS_PARSED,
+        /** Commits walked. */
+        COMMITS_WALKED,
+        /** Pairs of trees compared. */
+        TREES_DIFFED,
+        /** Work tree files whose metadata has been compared. */
+        FILES_STATED,
+        /** Lookups satisfied by a cache. */
+        CACHE_HITS,
+        /** Lookups not satisfied by a cache. */
+        CACHE_MISSES
+    }
+
+    /**
+     * Invoked when a phase has completed. Phases that produce a stream
+     * complete when the stream has been consumed or closed. The default
+     * implementation does nothing.
+     *
+     * @param repository the repository
+     * @param phase the phase
+     * @param duration the duration
+     */
+    default void phaseCompleted(Repository repository, Phase phase,
+            Duration duration) {
+        // Default does nothing.
+    }
+
+    /**
+     * Invoked to report a count. The default implementation does
+     * nothing.
+     *
+     * @param repository the repository
+     * @param counter the counter
+     * @param count the number of items counted since the last report
+     */
+    default void counted(Repository repository, Counter counter,
+            long count) {
+        // Default does nothing.
+    }
+}
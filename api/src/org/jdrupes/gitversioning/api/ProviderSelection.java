@@ -0,0 +1,113 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.api;
+
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.ServiceLoader;
+import java.util.ServiceLoader.Provider;
+import java.util.WeakHashMap;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Selects the {@link VersionEvaluatorProvider} for a repository.
+ *
+ * <p>The available providers are looked up once per class loader
+ * and sorted by their priority. The class loaders are referenced
+ * weakly and the providers softly, so that caching the providers
+ * does not prevent class loaders from being unloaded.
+ */
+final class ProviderSelection {
+
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Map<ClassLoader,
+            SoftReference<List<Candidate>>> candidates
+                = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * A provider found by the service loader.
+     *
+     * @param provider the provider
+     * @param priority the provider's priority
+     */
+    private record Candidate(Provider<VersionEvaluatorProvider> provider,
+            int priority) {
+    }
+
+    private ProviderSelection() {
+    }
+
+    /**
+     * Returns the candidates available from the given class loader,
+     * ordered by descending priority.
+     *
+     * @param classLoader the class loader
+     * @return the candidates
+     */
+    private static List<Candidate> candidates(ClassLoader classLoader) {
+        var cached = candidates.get(classLoader);
+        var result = cached == null ? null : cached.get();
+        if (result == null) {
+            result = ServiceLoader.load(VersionEvaluatorProvider.class,
+                classLoader).stream()
+                .map(p -> new Candidate(p, p.get().priority()))
+                .sorted(Comparator.comparingInt(Candidate::priority)
+                    .reversed())
+                .toList();
+            candidates.put(classLoader, new SoftReference<>(result));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new instance of the provider to use for the repository.
+     *
+     * @param repository the repository
+     * @param classLoaders the class loaders to use, in order of
+     * precedence
+     * @return the provider
+     * @throws NoSuchElementException if no suitable provider
+     * is available
+     */
+    /* default */ static VersionEvaluatorProvider select(
+            Repository repository, Stream<ClassLoader> classLoaders) {
+        var available = classLoaders.flatMap(cl -> candidates(cl).stream())
+            .toList();
+        var selected
+            = System.getProperty(VersionEvaluatorProvider.PROVIDER_PROPERTY);
+        if (selected != null) {
+            return available.stream()
+                .filter(c -> c.provider().type().getName().equals(selected))
+                .findFirst().map(c -> c.provider().get())
+                .orElseThrow(() -> new NoSuchElementException(
+                    "Provider " + selected + " is not available"));
+        }
+        return available.stream()
+            .sorted(Comparator.comparingInt(Candidate::priority).reversed())
+            .map(c -> c.provider().get())
+            .filter(p -> p.supports(repository)).findFirst()
+            .orElseThrow(() -> new NoSuchElementException(
+                "No provider supports " + repository));
+    }
+}
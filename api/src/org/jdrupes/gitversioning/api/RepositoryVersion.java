@@ -0,0 +1,35 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.jdrupes.gitversioning.api;
+
+import java.nio.file.Path;
+
+/**
+ * The version evaluated for a repository.
+ *
+ * @param directory the repository's directory as passed to
+ * {@link VersionEvaluator#forRepositories(java.util.Collection)}
+ * @param version the version, {@code null} if the evaluation failed
+ * @param failure the cause of the failure, {@code null} if the
+ * evaluation succeeded
+ */
+public record RepositoryVersion(Path directory, String version,
+        Exception failure) {
+}
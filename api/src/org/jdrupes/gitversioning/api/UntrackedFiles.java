@@ -0,0 +1,52 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.api;
+
+/**
+ * Controls how untracked files are searched for when evaluating
+ * the {@link VersionEvaluator#dirtyFiles() dirty files}.
+ *
+ * <p>Searching for untracked files requires descending into every
+ * directory of the work tree that is not ignored. Large directories
+ * with generated files that are not listed in {@code .gitignore}
+ * can make this very slow.
+ */
+public enum UntrackedFiles {
+
+    /** Report all untracked files that match the file selection. */
+    ALL,
+
+    /**
+     * Search for untracked files only in the directories that can
+     * contain files matching the file selection. Has the same result
+     * as {@link #ALL} but avoids descending into directories that
+     * cannot contain matching files.
+     */
+    SCOPED,
+
+    /**
+     * Like {@link #SCOPED}, but stop descending into an untracked
+     * directory once a matching file has been found in it. Only the
+     * first matching file of every untracked directory is reported.
+     */
+    FIRST_MATCH,
+
+    /** Ignore untracked files. */
+    NONE
+}
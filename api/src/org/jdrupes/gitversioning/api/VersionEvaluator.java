@@ -18,12 +18,20 @@
 
 package org.jdrupes.gitversioning.api;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
-import java.util.ServiceLoader.Provider;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
 
 /**
  * Configurable version evaluator for a Git repository.
@@ -41,41 +49,106 @@ public interface VersionEvaluator {
     /**
      * Creates a version evaluator for the given repository. The
      * implementation is looked up using the {@link ServiceLoader} mechanism
-     * with the given class loader.
+     * with the given class loader. If several implementations are
+     * available, the one with the highest
+     * {@link VersionEvaluatorProvider#priority() priority} that
+     * {@link VersionEvaluatorProvider#supports(Repository) supports}
+     * the repository is used, unless a provider is selected explicitly
+     * with the system property
+     * {@value VersionEvaluatorProvider#PROVIDER_PROPERTY}. The available
+     * implementations are looked up once per class loader.
      *
      * @param repository the repository
      * @param classLoader the class loader to use for service loading
      * @return the version evaluator
-     * @throws java.util.NoSuchElementException if no
+     * @throws java.util.NoSuchElementException if no suitable
      * {@link VersionEvaluatorProvider} is available
      */
     static VersionEvaluator forRepository(Repository repository,
             ClassLoader classLoader) {
-        ServiceLoader<VersionEvaluatorProvider> loader
-            = ServiceLoader.load(VersionEvaluatorProvider.class, classLoader);
-        return loader.findFirst().orElseThrow().repository(repository);
+        return ProviderSelection.select(repository, Stream.of(classLoader))
+            .repository(repository);
     }
 
     /**
      * Creates a version evaluator for the given repository. The
      * implementation is looked up using the {@link ServiceLoader} mechanism,
      * trying the context class loader of the current thread and the class
-     * loader of this class.
+     * loader of this class. The implementation is selected as described
+     * for {@link #forRepository(Repository, ClassLoader)}, implementations
+     * found with the context class loader take precedence if they have
+     * the same priority.
      *
      * @param repository the repository
      * @return the version evaluator
-     * @throws java.util.NoSuchElementException if no
+     * @throws java.util.NoSuchElementException if no suitable
      * {@link VersionEvaluatorProvider} is available
      */
     static VersionEvaluator forRepository(Repository repository) {
-        return Stream.of(Thread.currentThread().getContextClassLoader(),
-            VersionEvaluator.class.getClassLoader()).filter(Objects::nonNull)
-            .map(cl -> ServiceLoader.load(VersionEvaluatorProvider.class, cl)
-                .stream())
-            .flatMap(s -> s).findFirst().map(Provider::get).orElseThrow()
+        return ProviderSelection.select(repository,
+            Stream.of(Thread.currentThread().getContextClassLoader(),
+                VersionEvaluator.class.getClassLoader())
+                .filter(Objects::nonNull))
             .repository(repository);
     }
 
+    /**
+     * Evaluates the versions of the repositories in the given
+     * directories concurrently, with default settings. Equivalent to
+     * {@link #forRepositories(Collection, int, Consumer)} with a
+     * default concurrency of the number of available processors,
+     * but at least 4, and no further configuration.
+     *
+     * @param directories the directories, each one either the
+     * work tree or the directory of a repository
+     * @return the versions, in the order in which the evaluations
+     * complete; the stream must be closed
+     */
+    static Stream<RepositoryVersion> forRepositories(
+            Collection<Path> directories) {
+        return forRepositories(directories,
+            WorkspaceEvaluation.DEFAULT_CONCURRENCY, evaluator -> {
+            });
+    }
+
+    /**
+     * Evaluates the versions of the repositories in the given
+     * directories concurrently. Each repository is opened, evaluated
+     * by an evaluator obtained with {@link #forRepository(Repository)}
+     * and closed on a virtual thread of its own. At most
+     * {@code concurrency} repositories are open at the same time,
+     * which bounds the I/O load and the number of open files.
+     * Evaluators that are {@link AutoCloseable} are closed after the
+     * evaluation. The repositories share JGit's window cache for pack
+     * files, which is configured once per JVM by the application.
+     * Its defaults are adequate for the default concurrency.
+     *
+     * <p>The results are streamed in the order in which the
+     * evaluations complete. A failure to open or evaluate a
+     * repository is reported in the result and does not affect
+     * the evaluation of the other repositories. An {@link Error}
+     * is reported as failure, wrapped in a
+     * {@link java.util.concurrent.ExecutionException}.
+     * Closing the stream cancels the evaluations that have not
+     * completed yet.
+     *
+     * @param directories the directories, each one either the
+     * work tree or the directory of a repository
+     * @param concurrency the maximum number of repositories that
+     * are evaluated at the same time
+     * @param configurer invoked with each evaluator before its
+     * version is evaluated, e.g. to set a
+     * {@link #tagFilter(TagFilter) tag filter}
+     * @return the versions; the stream must be closed
+     * @throws IllegalArgumentException if concurrency is less than 1
+     */
+    static Stream<RepositoryVersion> forRepositories(
+            Collection<Path> directories, int concurrency,
+            Consumer<? super VersionEvaluator> configurer) {
+        return WorkspaceEvaluation.versions(directories, concurrency,
+            configurer);
+    }
+
     /**
      * Returns the evaluator's repository.
      *
@@ -138,9 +211,178 @@ public interface VersionEvaluator {
      */
     VersionEvaluator subDirectory(Path subDirectory);
 
+    /**
+     * Sets how untracked files are searched for when evaluating
+     * the {@link #dirtyFiles() dirty files}. Defaults to
+     * {@link UntrackedFiles#ALL}.
+     *
+     * <p>The default implementation searches for all untracked files.
+     * It therefore accepts the modes {@link UntrackedFiles#ALL} and
+     * {@link UntrackedFiles#SCOPED}, which have the same result.
+     *
+     * @param mode the mode
+     * @return this evaluator for chaining
+     * @throws UnsupportedOperationException if the evaluator does not
+     * support the mode (as the default implementation for
+     * {@link UntrackedFiles#FIRST_MATCH} and {@link UntrackedFiles#NONE})
+     */
+    default VersionEvaluator untrackedFiles(UntrackedFiles mode) {
+        if (mode != UntrackedFiles.ALL && mode != UntrackedFiles.SCOPED) {
+            throw new UnsupportedOperationException(
+                "Untracked files mode " + mode + " is not supported");
+        }
+        return this;
+    }
+
+    /**
+     * Sets which changes of submodules are considered when evaluating
+     * the {@link #dirtyFiles() dirty files}. Inspecting the work tree
+     * of every submodule multiplies the cost of the status evaluation.
+     * Defaults to {@code null}, i.e. the {@code submodule.<name>.ignore}
+     * settings from the repository's configuration apply.
+     *
+     * @param mode the mode
+     * @return this evaluator for chaining
+     * @throws UnsupportedOperationException if the mode is not
+     * {@code null} and the evaluator can only apply the settings from
+     * the repository's configuration (as the default implementation)
+     */
+    default VersionEvaluator ignoreSubmodules(IgnoreSubmoduleMode mode) {
+        if (mode != null) {
+            throw new UnsupportedOperationException(
+                "Overriding the submodules' ignore settings is not"
+                    + " supported");
+        }
+        return this;
+    }
+
+    /**
+     * If set, only submodules that match the file selection or that
+     * are located in a directory that can contain matching files are
+     * inspected when evaluating the {@link #dirtyFiles() dirty files}.
+     * Defaults to {@code false}.
+     *
+     * <p>The default implementation ignores the setting, i.e. all
+     * submodules are inspected. As changes outside the file selection
+     * are not reported anyway, this affects the cost of the evaluation
+     * only.
+     *
+     * @param scoped whether to inspect only submodules in scope
+     * @return this evaluator for chaining
+     */
+    default VersionEvaluator scopedSubmodules(boolean scoped) {
+        return this;
+    }
+
+    /**
+     * Adds a listener that receives metrics about the evaluations
+     * performed by this evaluator, in addition to the listeners
+     * registered globally (see {@link MetricsListener}).
+     *
+     * @param listener the listener
+     * @return this evaluator for chaining
+     * @throws UnsupportedOperationException if the evaluator does not
+     * report metrics (as the default implementation)
+     */
+    default VersionEvaluator metricsListener(MetricsListener listener) {
+        throw new UnsupportedOperationException(
+            "Reporting metrics is not supported");
+    }
+
+    /**
+     * Evaluates the version at the given revision instead of at HEAD.
+     * The tag search and the search for modified files start at the
+     * resolved commit, using only the repository's object database.
+     * Nothing needs to be checked out, and the work tree is not
+     * inspected, i.e. there are no {@link #dirtyFiles() dirty files}.
+     * The revision is resolved each time the version is evaluated.
+     *
+     * @param revision the revision as understood by
+     * {@link Repository#resolve(String)}, e.g. a branch name, a tag name,
+     * a commit id or an expression such as {@code main~2}; {@code null}
+     * to evaluate at HEAD (the default)
+     * @return this evaluator for chaining
+     * @throws UnsupportedOperationException if the revision is not
+     * {@code null} and the evaluator cannot evaluate at other revisions
+     * (as the default implementation)
+     */
+    default VersionEvaluator at(String revision) {
+        if (revision != null) {
+            throw new UnsupportedOperationException(
+                "Evaluation at a revision is not supported");
+        }
+        return this;
+    }
+
+    /**
+     * Sets the minimum depth of the history that is required if the
+     * repository is a shallow clone. The depth is the number of commits
+     * on the first parent line from HEAD (or the
+     * {@link #at(String) configured revision}) to the shallow boundary,
+     * including both, as specified with {@code git clone --depth}.
+     * Evaluations in a shallow clone with a history that is less deep
+     * fail with an {@link IllegalStateException}. The requirement does
+     * not apply to complete histories, however short. The default
+     * is 0, i.e. no requirement.
+     *
+     * @param depth the minimum depth
+     * @return this evaluator for chaining
+     * @throws UnsupportedOperationException if the depth is greater
+     * than 0 and the evaluator cannot check the depth of the history
+     * (as the default implementation)
+     * @see #historyTruncated()
+     */
+    default VersionEvaluator minimumDepth(int depth) {
+        if (depth > 0) {
+            throw new UnsupportedOperationException(
+                "Checking the depth of the history is not supported");
+        }
+        return this;
+    }
+
+    /**
+     * Returns an immutable snapshot of this evaluator that can be
+     * shared by threads that evaluate versions concurrently. Invoking
+     * a configuration method of the snapshot, i.e. any method that
+     * returns the evaluator for chaining, causes an
+     * {@link IllegalStateException}. All other methods, including
+     * {@link #explain()}, can be invoked concurrently. Freezing a
+     * frozen evaluator returns the evaluator itself. The default
+     * implementation throws an {@link UnsupportedOperationException}.
+     *
+     * @return the frozen evaluator
+     */
+    default VersionEvaluator freeze() {
+        throw new UnsupportedOperationException(
+            "Freezing is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Returns the name of the branch that the version is evaluated for.
+     * This is the short name of the current branch or, if HEAD is
+     * detached, the id of the current commit. If the version is
+     * evaluated {@link #at(String) at a revision}, this is the name
+     * of the branch (without {@code refs/heads/} or the remote's prefix)
+     * if the revision names a branch, else the id of the commit.
+     *
+     * <p>The default implementation returns the repository's current
+     * branch.
+     *
+     * @return the branch name
+     */
+    default String branch() {
+        try {
+            return repository().getBranch();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Returns a stream of "dirty" (uncommitted or untracked) files
      * in the work tree that match the configured file selection.
+     * The stream is empty for repositories without a work tree
+     * (bare or in-memory repositories).
      *
      * @return a stream of paths
      */
@@ -154,6 +396,42 @@ public interface VersionEvaluator {
      */
     Stream<Path> modifiedFiles();
 
+    /**
+     * Checks if there is any dirty or modified file that matches the
+     * configured file selection. Implementations may evaluate the checks
+     * in any order, e.g. cheapest first based on previous evaluations.
+     * The default implementation checks the dirty files first.
+     *
+     * @return {@code true} if a dirty or modified file exists
+     */
+    default boolean anyChange() {
+        try (var dirty = dirtyFiles()) {
+            if (dirty.findAny().isPresent()) {
+                return true;
+            }
+        }
+        try (var modified = modifiedFiles()) {
+            return modified.findAny().isPresent();
+        }
+    }
+
+    /**
+     * Checks if the history reachable from HEAD (or the
+     * {@link #at(String) configured revision}) is truncated because the
+     * repository is a shallow clone. The evaluation stops at the shallow
+     * boundary, and the commits beyond the boundary are treated as if
+     * they did not exist. If the history is truncated, the results may
+     * therefore differ from the results for a complete clone, especially
+     * if no version tag is reachable within the truncated history.
+     * The default implementation returns {@code false}.
+     *
+     * @return {@code true} if the history is truncated
+     * @see #minimumDepth(int)
+     */
+    default boolean historyTruncated() {
+        return false;
+    }
+
     /**
      * Evaluates and returns the version string for the current repository
      * state.
@@ -161,4 +439,145 @@ public interface VersionEvaluator {
      * @return the version string
      */
     String version();
+
+    /**
+     * Evaluates the {@link #version() version} asynchronously, using
+     * the given executor. Cancelling the returned future interrupts
+     * the evaluation. Implementations may split the evaluation into
+     * several tasks, e.g. to search for the version tag and to evaluate
+     * the status of the work tree concurrently. The default
+     * implementation invokes {@link #version()} in a single task.
+     *
+     * @param executor the executor
+     * @return the future version
+     * @see InterruptibleFuture
+     */
+    default CompletableFuture<String> versionAsync(Executor executor) {
+        return InterruptibleFuture.supplyAsync(this::version, executor);
+    }
+
+    /**
+     * Evaluates the {@link #dirtyFiles() dirty files} asynchronously,
+     * using the given executor. Cancelling the returned future
+     * interrupts the evaluation.
+     *
+     * @param executor the executor
+     * @return the future paths, in the order of {@link #dirtyFiles()}
+     * @see InterruptibleFuture
+     */
+    default CompletableFuture<List<Path>> dirtyFilesAsync(
+            Executor executor) {
+        return InterruptibleFuture.supplyAsync(() -> {
+            try (var files = dirtyFiles()) {
+                return files.toList();
+            }
+        }, executor);
+    }
+
+    /**
+     * Evaluates the {@link #modifiedFiles() modified files}
+     * asynchronously, using the given executor. Cancelling the
+     * returned future interrupts the evaluation.
+     *
+     * @param executor the executor
+     * @return the future paths, in the order of {@link #modifiedFiles()}
+     * @see InterruptibleFuture
+     */
+    default CompletableFuture<List<Path>> modifiedFilesAsync(
+            Executor executor) {
+        return InterruptibleFuture.supplyAsync(() -> {
+            try (var files = modifiedFiles()) {
+                return files.toList();
+            }
+        }, executor);
+    }
+
+    /**
+     * Evaluates the versions of all commits reachable from HEAD (or
+     * the {@link #at(String) configured revision}). The result for a
+     * commit is the same as the result of {@link #version()} for an
+     * evaluator with the same configuration
+     * {@link #at(String) at the commit}, except that the tag processor
+     * sees the {@link #branch() branch} of this evaluator for all commits.
+     *
+     * <p>Implementations evaluate the history in a single pass rather
+     * than evaluating each commit separately. The commits are reported
+     * in topological order, parents before their children. The default
+     * implementation throws an {@link UnsupportedOperationException}.
+     *
+     * @return the versions, the stream must be closed
+     */
+    default Stream<CommitVersion> history() {
+        throw new UnsupportedOperationException(
+            "Version history is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Evaluates the versions at the given revisions, e.g. at the tips
+     * of all branches. The result for a revision is the same as the
+     * result of {@link #version()} for an evaluator with the same
+     * configuration {@link #at(String) at the revision}. The configured
+     * revision of this evaluator is ignored.
+     *
+     * <p>Implementations look up the version tags once and evaluate
+     * the merged histories of all revisions in a single pass, so the
+     * cost of the evaluation is largely independent of the number of
+     * revisions. The default implementation throws an
+     * {@link UnsupportedOperationException}.
+     *
+     * @param revisions the revisions as understood by
+     * {@link Repository#resolve(String)}
+     * @return the versions, mapped to the revisions, in the order
+     * of the given revisions
+     * @throws IllegalArgumentException if a revision cannot be resolved
+     */
+    default Map<String, String> versions(Collection<String> revisions) {
+        throw new UnsupportedOperationException(
+            "Bulk evaluation is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Evaluates the {@link #version() version} and reports how it has
+     * been derived: the tags considered and why they have been
+     * rejected, the selected tag, the first dirty or modified file
+     * found since the selected tag, and the durations and counts
+     * of the phases of the evaluation (see {@link MetricsListener}).
+     * The explanation can be rendered as JSON using
+     * {@link Explanation#toJson()}.
+     *
+     * <p>Failures that are caused by the repository's content, such
+     * as a tag with a version that cannot be parsed, are reported in
+     * the explanation instead of being thrown. The default
+     * implementation throws an {@link UnsupportedOperationException}.
+     *
+     * @return the explanation
+     */
+    default Explanation explain() {
+        throw new UnsupportedOperationException(
+            "Explanations are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Returns a publisher that notifies its subscribers about changes
+     * of the {@link #version() version}. A subscriber receives the
+     * current version as first item and a new item each time the
+     * evaluated version differs from the previously received one.
+     * Intermediate versions may be skipped if the subscriber has not
+     * requested further items.
+     *
+     * <p>This is an optional operation. Watching requires support
+     * from the implementation and, usually, a repository in the file
+     * system. Callers that must also work with other implementations
+     * or repositories catch the {@link UnsupportedOperationException}
+     * and fall back to evaluating the version when needed. The
+     * default implementation does not support the operation.
+     *
+     * @return the publisher
+     * @throws UnsupportedOperationException if the implementation
+     * cannot watch the evaluator's repository
+     */
+    default Flow.Publisher<String> versionUpdates() {
+        throw new UnsupportedOperationException(
+            "Version updates are not supported by " + getClass().getName());
+    }
 }
@@ -27,9 +27,46 @@ import org.eclipse.jgit.lib.Repository;
  * <p>Implementations are discovered via the {@link ServiceLoader}
  * mechanism. Register the provider in
  * {@code META-INF/services/org.jdrupes.gitversioning.api.VersionEvaluatorProvider}.
+ *
+ * <p>If several providers are available,
+ * {@link VersionEvaluator#forRepository(Repository)} selects the
+ * provider with the highest {@link #priority() priority} that
+ * {@link #supports(Repository) supports} the repository. The selection
+ * can be overridden by setting the system property
+ * {@value #PROVIDER_PROPERTY} to the class name of the provider to use.
  */
 public interface VersionEvaluatorProvider extends VersionEvaluator {
 
+    /** The system property used to select a provider explicitly. */
+    String PROVIDER_PROPERTY = "org.jdrupes.gitversioning.provider";
+
+    /**
+     * Returns the provider's priority. If several providers support a
+     * repository, the provider with the highest priority is used.
+     * The priority is queried once per class loader, it must therefore
+     * not depend on the provider's state. The JGit based reference
+     * implementation has priority 0, which is also the default.
+     *
+     * @return the priority
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Checks if the provider can evaluate the given repository. This is
+     * invoked on a newly created provider before its repository is set.
+     * Providers use this to check e.g. whether the repository is
+     * available in the file system or whether a required executable is
+     * installed. The default implementation returns {@code true}.
+     *
+     * @param repository the repository
+     * @return the result
+     */
+    default boolean supports(Repository repository) {
+        return true;
+    }
+
     /**
      * Sets the repository to use.
      *
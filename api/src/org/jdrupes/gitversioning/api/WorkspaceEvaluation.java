@@ -0,0 +1,197 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.jdrupes.gitversioning.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Evaluates the versions of many repositories concurrently.
+ *
+ * <p>Each repository is evaluated on a virtual thread. A
+ * {@link Semaphore} bounds the number of repositories that are open
+ * and evaluated at the same time. This keeps the I/O load and the
+ * number of open pack files within limits. Evaluators that are
+ * {@link AutoCloseable} and the repositories are closed as soon as
+ * they have been evaluated. Closing a repository releases its pack
+ * files and purges their windows from JGit's {@code WindowCache}.
+ *
+ * <p>All repositories share the {@code WindowCache}. Its configuration
+ * (see {@code WindowCacheConfig}) applies to the complete JVM and
+ * is therefore left to the application. The defaults are adequate:
+ * evaluating a version reads mainly refs, commits and tags, which
+ * fit into the default cache of 10 MiB, and the limit of 128 open
+ * pack files is far above the number of repositories that are open
+ * at the same time with the default concurrency (unless the
+ * repositories have many pack files because they have not been
+ * repacked for a long time). Exceeding the limits only causes
+ * windows and pack files to be evicted and read again.
+ */
+final class WorkspaceEvaluation {
+
+    /** The default limit for concurrent evaluations. */
+    /* default */ static final int DEFAULT_CONCURRENCY
+        = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private WorkspaceEvaluation() {
+    }
+
+    /**
+     * Starts the evaluations and returns the results in the order
+     * in which the evaluations complete. Closing the stream cancels
+     * pending evaluations.
+     *
+     * @param directories the directories
+     * @param concurrency the maximum number of concurrent evaluations
+     * @param configurer invoked with each evaluator before the
+     * evaluation
+     * @return the results
+     */
+    @SuppressWarnings("PMD.CloseResource")
+    /* default */ static Stream<RepositoryVersion> versions(
+            Collection<Path> directories, int concurrency,
+            Consumer<? super VersionEvaluator> configurer) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException(
+                "Concurrency must be positive: " + concurrency);
+        }
+        var pending = List.copyOf(directories);
+        BlockingQueue<RepositoryVersion> results = new LinkedBlockingQueue<>();
+        var limit = new Semaphore(concurrency);
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (var directory : pending) {
+            executor.execute(
+                () -> evaluate(directory, limit, configurer, results));
+        }
+        executor.shutdown();
+        // Not SIZED, the results must be taken to be counted
+        var spliterator = new AbstractSpliterator<RepositoryVersion>(
+            Long.MAX_VALUE, Spliterator.NONNULL) {
+            private int delivered;
+
+            @Override
+            public boolean tryAdvance(
+                    Consumer<? super RepositoryVersion> action) {
+                if (delivered == pending.size()) {
+                    return false;
+                }
+                try {
+                    action.accept(results.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException(
+                        "Interrupted while waiting for versions");
+                }
+                delivered++;
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+            .onClose(executor::shutdownNow);
+    }
+
+    /**
+     * Evaluates the version and adds the result to the results. An
+     * {@link Error} is reported as the result's failure, wrapped in
+     * an {@link ExecutionException}. It is not rethrown, because it
+     * has been reported already.
+     */
+    private static void evaluate(Path directory, Semaphore limit,
+            Consumer<? super VersionEvaluator> configurer,
+            BlockingQueue<RepositoryVersion> results) {
+        try {
+            results.add(evaluate(directory, limit, configurer));
+        } catch (Error e) {
+            results.add(new RepositoryVersion(directory, null,
+                new ExecutionException(e)));
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private static RepositoryVersion evaluate(Path directory,
+            Semaphore limit, Consumer<? super VersionEvaluator> configurer) {
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            return new RepositoryVersion(directory, null,
+                new CancellationException("Evaluation cancelled"));
+        }
+        try (var repository = open(directory)) {
+            var evaluator = VersionEvaluator.forRepository(repository);
+            try {
+                configurer.accept(evaluator);
+                return new RepositoryVersion(directory, evaluator.version(),
+                    null);
+            } finally {
+                if (evaluator instanceof AutoCloseable closeable) {
+                    close(closeable);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return new RepositoryVersion(directory, null, e);
+        } finally {
+            limit.release();
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private static void close(AutoCloseable closeable) throws IOException {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens the repository in the directory, which may be the
+     * work tree or the repository's directory. Unlike
+     * {@code RepositoryBuilder#findGitDir}, this does not search
+     * the parent directories.
+     */
+    private static Repository open(Path directory) throws IOException {
+        var gitDir = RepositoryCache.FileKey.resolve(directory.toFile(),
+            FS.DETECTED);
+        if (gitDir == null) {
+            throw new IOException(directory + " is not a Git repository");
+        }
+        return new RepositoryBuilder().setGitDir(gitDir).setMustExist(true)
+            .build();
+    }
+}
@@ -27,6 +27,8 @@
  * {@link VersionEvaluator}.
  *
  * <p>Implementations are loaded through {@link VersionEvaluatorProvider} using
- * the {@link java.util.ServiceLoader} mechanism.
+ * the {@link java.util.ServiceLoader} mechanism. If several implementations
+ * are available, the one with the highest priority that supports the
+ * repository is used.
  */
 package org.jdrupes.gitversioning.api;
\ No newline at end of file
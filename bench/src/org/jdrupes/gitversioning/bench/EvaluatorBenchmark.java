@@ -0,0 +1,144 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the methods of
+ * {@link org.jdrupes.gitversioning.api.VersionEvaluator} with the
+ * default file selection (all files) or a single sub-directory
+ * (see {@link RepositoryState#subDirectory}). Every invocation uses
+ * a new evaluator, caches that are shared by the evaluators of a
+ * repository are therefore warm after the first invocation, as
+ * they are in a long running process.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    /**
+     * Evaluates the version at HEAD.
+     *
+     * @param state the state
+     * @return the version
+     */
+    @Benchmark
+    public String version(RepositoryState state) {
+        return state.evaluator().version();
+    }
+
+    /**
+     * Evaluates the version at the oldest tag.
+     *
+     * @param state the state
+     * @return the version
+     */
+    @Benchmark
+    public String versionAtRevision(RepositoryState state) {
+        return state.evaluator().at(state.tagNames()[0]).version();
+    }
+
+    /**
+     * Evaluates the dirty files.
+     *
+     * @param state the state
+     * @return the number of dirty files
+     */
+    @Benchmark
+    public long dirtyFiles(RepositoryState state) {
+        try (var files = state.evaluator().dirtyFiles()) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Evaluates the files modified since the latest version tag.
+     *
+     * @param state the state
+     * @return the number of modified files
+     */
+    @Benchmark
+    public long modifiedFiles(RepositoryState state) {
+        try (var files = state.evaluator().modifiedFiles()) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Checks for any change.
+     *
+     * @param state the state
+     * @return the result
+     */
+    @Benchmark
+    public boolean anyChange(RepositoryState state) {
+        return state.evaluator().anyChange();
+    }
+
+    /**
+     * Evaluates the branch.
+     *
+     * @param state the state
+     * @return the branch
+     */
+    @Benchmark
+    public String branch(RepositoryState state) {
+        return state.evaluator().branch();
+    }
+
+    /**
+     * Evaluates the versions of all commits.
+     *
+     * @param state the state
+     * @return the number of commits
+     */
+    @Benchmark
+    public long history(RepositoryState state) {
+        try (var versions = state.evaluator().history()) {
+            return versions.count();
+        }
+    }
+
+    /**
+     * Evaluates the versions at all tags and the main branch.
+     *
+     * @param state the state
+     * @return the versions
+     */
+    @Benchmark
+    public Map<String, String> versions(RepositoryState state) {
+        var revisions = new ArrayList<>(List.of(state.tagNames()));
+        revisions.add("main");
+        return state.evaluator().versions(revisions);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.bench;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
+import org.jdrupes.gitversioning.core.AntPatternMatcher;
+import org.jdrupes.gitversioning.core.GlobMatcher;
+import org.jdrupes.gitversioning.core.IncludeMatcher;
+import org.jdrupes.gitversioning.core.RegexMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the file selection. All kinds of selection select
+ * the Java files in the first module (or all files in the first
+ * module for {@code subDirectory}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+    /**
+     * The file selection.
+     */
+    @State(Scope.Benchmark)
+    public static class Selection {
+
+        /** The kind of selection. */
+        @Param({ "glob", "regex", "ant", "subDirectory" })
+        public String kind;
+
+        private IncludeMatcher matcher;
+        private List<Path> paths;
+
+        /**
+         * Creates the matcher and the paths of all files.
+         *
+         * @param state the repository state
+         */
+        @Setup
+        public void setup(RepositoryState state) {
+            matcher = switch (kind) {
+            case "glob" -> new GlobMatcher("m000/**/*.java");
+            case "regex" -> new RegexMatcher("m000/.*\\.java");
+            case "ant" -> new AntPatternMatcher("m000/**/*.java");
+            default -> new AntPatternMatcher("m000/**");
+            };
+            paths = IntStream.range(0, state.files)
+                .mapToObj(i -> Path.of(RepositoryGenerator.path(i))).toList();
+        }
+
+        /**
+         * Applies the selection to the evaluator.
+         *
+         * @param evaluator the evaluator
+         * @return the evaluator
+         */
+        public VersionEvaluator apply(VersionEvaluator evaluator) {
+            return switch (kind) {
+            case "glob" -> evaluator.matchingGlob("m000/**/*.java");
+            case "regex" -> evaluator.matchingRegex("m000/.*\\.java");
+            case "ant" -> evaluator.matchingAntPattern("m000/**/*.java");
+            default -> evaluator.subDirectory(Path.of("m000"));
+            };
+        }
+    }
+
+    /**
+     * Matches the paths of all files in the work tree.
+     *
+     * @param selection the selection
+     * @return the number of matching files
+     */
+    @Benchmark
+    public long matches(Selection selection) {
+        long count = 0;
+        for (var path : selection.paths) {
+            if (selection.matcher.matches(path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates the version for the selected files.
+     *
+     * @param state the state
+     * @param selection the selection
+     * @return the version
+     */
+    @Benchmark
+    public String version(RepositoryState state, Selection selection) {
+        return selection.apply(state.evaluator()).version();
+    }
+
+    /**
+     * Evaluates the dirty files in the selection.
+     *
+     * @param state the state
+     * @param selection the selection
+     * @return the number of dirty files
+     */
+    @Benchmark
+    public long dirtyFiles(RepositoryState state, Selection selection) {
+        try (var files = selection.apply(state.evaluator()).dirtyFiles()) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Evaluates the modified files in the selection.
+     *
+     * @param state the state
+     * @param selection the selection
+     * @return the number of modified files
+     */
+    @Benchmark
+    public long modifiedFiles(RepositoryState state, Selection selection) {
+        try (var files = selection.apply(state.evaluator()).modifiedFiles()) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * Generates synthetic repositories for benchmarks and performance
+ * tests. The generated repository depends only on the configuration,
+ * i.e. generating a repository twice with the same settings yields
+ * the same commit ids.
+ *
+ * <p>The files are distributed over modules and directories with
+ * at most {@value #FANOUT} entries each. The file with index
+ * {@code i} is located at {@code m<module>/d<directory>/f<file>.java}
+ * (every fourth file has the extension {@code .md} instead). Each
+ * commit modifies between one and three files. A fraction of the
+ * commits on the main branch, as specified by the merge ratio, are
+ * merges of a short side branch. The version tags ({@code 1.0.0},
+ * {@code 1.1.0}, ...) are distributed evenly over the main branch.
+ *
+ * <p>The objects are written directly to a pack file, so repositories
+ * with a large number of commits and files can be generated in
+ * reasonable time. Optionally, a commit-graph with changed-path Bloom
+ * filters is written.
+ */
+@SuppressWarnings({ "PMD.TooManyFields",
+    "PMD.AvoidFieldNameMatchingMethodName" })
+public class RepositoryGenerator {
+
+    /** The maximum number of entries in a directory. */
+    public static final int FANOUT = 64;
+    private static final long BASE_TIME = 1_735_689_600L;
+
+    private int commits = 1000;
+    private int tags = 10;
+    private double mergeRatio = 0.1;
+    private int files = 1000;
+    private int dirtyFiles;
+    private int untrackedFiles;
+    private long seed = 1;
+    private boolean commitGraph;
+
+    private Random random;
+    private ObjectId[] blobs;
+    private int[] revisions;
+    private ObjectId[] leafTrees;
+    private ObjectId[] moduleTrees;
+    private BitSet modifiedLeafs;
+    private int commitCount;
+
+    /**
+     * Sets the total number of commits. Defaults to 1000.
+     *
+     * @param commits the number of commits
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator commits(int commits) {
+        this.commits = Math.max(1, commits);
+        return this;
+    }
+
+    /**
+     * Sets the number of version tags. Defaults to 10.
+     *
+     * @param tags the number of tags
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator tags(int tags) {
+        this.tags = tags;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of commits on the main branch that merge
+     * a side branch. Defaults to 0.1.
+     *
+     * @param mergeRatio the merge ratio
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator mergeRatio(double mergeRatio) {
+        this.mergeRatio = mergeRatio;
+        return this;
+    }
+
+    /**
+     * Sets the number of files in the work tree. Defaults to 1000.
+     *
+     * @param files the number of files
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator files(int files) {
+        this.files = Math.max(1, files);
+        return this;
+    }
+
+    /**
+     * Sets the number of tracked files that are modified in the work
+     * tree after the checkout. Defaults to 0.
+     *
+     * @param dirtyFiles the number of modified files
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator dirtyFiles(int dirtyFiles) {
+        this.dirtyFiles = dirtyFiles;
+        return this;
+    }
+
+    /**
+     * Sets the number of untracked files that are added to the work
+     * tree after the checkout. Defaults to 0.
+     *
+     * @param untrackedFiles the number of untracked files
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator untrackedFiles(int untrackedFiles) {
+        this.untrackedFiles = untrackedFiles;
+        return this;
+    }
+
+    /**
+     * Sets the seed of the random generator. Defaults to 1.
+     *
+     * @param seed the seed
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets whether a commit-graph with changed-path Bloom filters is
+     * written (by a garbage collection) and enabled in the repository's
+     * configuration ({@code core.commitGraph}). JGit reads the filters
+     * only if {@code commitGraph.readChangedPaths} is set in its own
+     * configuration. Defaults to {@code false}.
+     *
+     * @param commitGraph whether to write a commit-graph
+     * @return the generator for chaining
+     */
+    public RepositoryGenerator commitGraph(boolean commitGraph) {
+        this.commitGraph = commitGraph;
+        return this;
+    }
+
+    /**
+     * Returns the path of the file with the given index, relative
+     * to the work tree.
+     *
+     * @param index the index
+     * @return the path
+     */
+    public static String path(int index) {
+        return moduleName(index / FANOUT / FANOUT) + "/"
+            + directoryName(index / FANOUT) + "/" + fileName(index);
+    }
+
+    private static String moduleName(int module) {
+        return String.format("m%03d", module);
+    }
+
+    private static String directoryName(int leaf) {
+        return String.format("d%02d", leaf % FANOUT);
+    }
+
+    private static String fileName(int index) {
+        return String.format("f%02d.%s", index % FANOUT,
+            index % 4 == 3 ? "md" : "java");
+    }
+
+    /**
+     * Returns the name of the tag with the given index.
+     *
+     * @param index the index
+     * @return the tag name
+     */
+    public static String tagName(int index) {
+        return "1." + index + ".0";
+    }
+
+    /**
+     * Generates a repository with a work tree in the given directory.
+     * The main branch is checked out.
+     *
+     * @param directory the directory, must not exist or be empty
+     * @return the repository
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Repository generate(Path directory) throws IOException {
+        random = new Random(seed);
+        commitCount = 0;
+        Files.createDirectories(directory);
+        var repository = FileRepositoryBuilder
+            .create(directory.resolve(Constants.DOT_GIT).toFile());
+        repository.create();
+        ObjectId head;
+        List<ObjectId> mainline;
+        try (var inserter = newInserter(repository)) {
+            initFiles(inserter);
+            mainline = generateCommits(inserter);
+            head = mainline.get(mainline.size() - 1);
+            inserter.flush();
+        }
+        createRefs(repository, head, mainline);
+        try (var walk = new RevWalk(repository)) {
+            new DirCacheCheckout(repository, repository.lockDirCache(),
+                walk.parseCommit(head).getTree()).checkout();
+        }
+        modifyWorkTree(directory);
+        if (commitGraph) {
+            writeCommitGraph(repository);
+        }
+        return repository;
+    }
+
+    /**
+     * Writes the objects to a pack file if possible. Writing a loose
+     * object for every blob, tree and commit takes far longer.
+     */
+    private static ObjectInserter newInserter(Repository repository) {
+        if (repository.getObjectDatabase() instanceof ObjectDirectory dir) {
+            return dir.newPackInserter();
+        }
+        return repository.newObjectInserter();
+    }
+
+    private void initFiles(ObjectInserter inserter) throws IOException {
+        blobs = new ObjectId[files];
+        revisions = new int[files];
+        for (int i = 0; i < files; i++) {
+            blobs[i] = blob(inserter, i);
+        }
+        leafTrees = new ObjectId[(files + FANOUT - 1) / FANOUT];
+        moduleTrees
+            = new ObjectId[(leafTrees.length + FANOUT - 1) / FANOUT];
+        modifiedLeafs = new BitSet(leafTrees.length);
+        modifiedLeafs.set(0, leafTrees.length);
+    }
+
+    private ObjectId blob(ObjectInserter inserter, int index)
+            throws IOException {
+        return inserter.insert(Constants.OBJ_BLOB,
+            ("File " + index + ", revision " + revisions[index] + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void modifyFiles(ObjectInserter inserter) throws IOException {
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            int index = random.nextInt(files);
+            revisions[index]++;
+            blobs[index] = blob(inserter, index);
+            modifiedLeafs.set(index / FANOUT);
+        }
+    }
+
+    /**
+     * Builds the root tree, rebuilding only the trees that contain
+     * modified files.
+     */
+    private ObjectId tree(ObjectInserter inserter) throws IOException {
+        var modifiedModules = new BitSet(moduleTrees.length);
+        for (int leaf = modifiedLeafs.nextSetBit(0); leaf >= 0;
+                leaf = modifiedLeafs.nextSetBit(leaf + 1)) {
+            var formatter = new TreeFormatter();
+            int end = Math.min(files, (leaf + 1) * FANOUT);
+            for (int i = leaf * FANOUT; i < end; i++) {
+                formatter.append(fileName(i), FileMode.REGULAR_FILE, blobs[i]);
+            }
+            leafTrees[leaf] = inserter.insert(formatter);
+            modifiedModules.set(leaf / FANOUT);
+        }
+        modifiedLeafs.clear();
+        for (int module = modifiedModules.nextSetBit(0); module >= 0;
+                module = modifiedModules.nextSetBit(module + 1)) {
+            var formatter = new TreeFormatter();
+            for (int leaf = module * FANOUT; leaf < Math
+                .min(leafTrees.length, (module + 1) * FANOUT); leaf++) {
+                formatter.append(directoryName(leaf), FileMode.TREE,
+                    leafTrees[leaf]);
+            }
+            moduleTrees[module] = inserter.insert(formatter);
+        }
+        var formatter = new TreeFormatter();
+        for (int module = 0; module < moduleTrees.length; module++) {
+            formatter.append(moduleName(module), FileMode.TREE,
+                moduleTrees[module]);
+        }
+        return inserter.insert(formatter);
+    }
+
+    private ObjectId commit(ObjectInserter inserter, String message,
+            ObjectId... parents) throws IOException {
+        var ident = new PersonIdent("Generator", "generator@example.org",
+            Instant.ofEpochSecond(BASE_TIME + 60L * commitCount++),
+            ZoneOffset.UTC);
+        var builder = new CommitBuilder();
+        builder.setTreeId(tree(inserter));
+        builder.setParentIds(parents);
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        return inserter.insert(builder);
+    }
+
+    private List<ObjectId> generateCommits(ObjectInserter inserter)
+            throws IOException {
+        var mainline = new ArrayList<ObjectId>();
+        var head = commit(inserter, "Initial commit");
+        mainline.add(head);
+        while (commitCount < commits) {
+            if (commitCount + 2 <= commits
+                && random.nextDouble() < mergeRatio) {
+                // Short side branch forked from a recent commit
+                var side = mainline.get(Math.max(0,
+                    mainline.size() - 1 - random.nextInt(10)));
+                int length = 1 + random.nextInt(3);
+                for (int i = 0; i < length && commitCount + 1 < commits;
+                        i++) {
+                    modifyFiles(inserter);
+                    side = commit(inserter, "Side commit " + commitCount,
+                        side);
+                }
+                head = commit(inserter, "Merge " + commitCount, head, side);
+            } else {
+                modifyFiles(inserter);
+                head = commit(inserter, "Commit " + commitCount, head);
+            }
+            mainline.add(head);
+        }
+        return mainline;
+    }
+
+    private void createRefs(Repository repository, ObjectId head,
+            List<ObjectId> mainline) throws IOException {
+        var commands = new ArrayList<ReceiveCommand>();
+        commands.add(new ReceiveCommand(ObjectId.zeroId(), head,
+            Constants.R_HEADS + "main"));
+        for (int i = 0; i < tags; i++) {
+            var tagged = mainline.get(Math.min(mainline.size() - 1,
+                (int) ((i + 1L) * mainline.size() / (tags + 1))));
+            commands.add(new ReceiveCommand(ObjectId.zeroId(), tagged,
+                Constants.R_TAGS + tagName(i)));
+        }
+        var update = repository.getRefDatabase().newBatchUpdate()
+            .addCommand(commands);
+        try (var walk = new RevWalk(repository)) {
+            update.execute(walk, NullProgressMonitor.INSTANCE);
+        }
+        for (var command : commands) {
+            if (command.getResult() != ReceiveCommand.Result.OK) {
+                throw new IOException("Cannot create " + command.getRefName()
+                    + ": " + command.getResult());
+            }
+        }
+        repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + "main");
+    }
+
+    private static void writeCommitGraph(Repository repository)
+            throws IOException {
+        var config = repository.getConfig();
+        config.setBoolean("core", null, "commitGraph", true);
+        config.setBoolean("gc", null, "writeCommitGraph", true);
+        config.setBoolean("gc", null, "writeChangedPaths", true);
+        config.save();
+        try {
+            Git.wrap(repository).gc().call();
+        } catch (GitAPIException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void modifyWorkTree(Path directory) throws IOException {
+        int count = Math.min(dirtyFiles, files);
+        var modified = new BitSet(files);
+        while (modified.cardinality() < count) {
+            modified.set(random.nextInt(files));
+        }
+        for (int i = modified.nextSetBit(0); i >= 0;
+                i = modified.nextSetBit(i + 1)) {
+            Files.writeString(directory.resolve(path(i)), "Modified\n",
+                StandardOpenOption.APPEND);
+        }
+        for (int i = 0; i < untrackedFiles; i++) {
+            var file = directory.resolve(moduleName(i % moduleTrees.length)
+                + String.format("/new/u%05d.java", i));
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "Untracked " + i + "\n");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.SystemReader;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
+import org.jdrupes.gitversioning.core.VersionEvaluatorProvider;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A repository generated by the {@link RepositoryGenerator}, shared by
+ * all invocations of a benchmark. The parameters can be overridden on
+ * the JMH command line, e.g. {@code -p commits=100000}.
+ */
+@State(Scope.Benchmark)
+public class RepositoryState {
+
+    /** The number of commits. */
+    @Param({ "1000", "10000" })
+    public int commits;
+
+    /** The number of version tags. */
+    @Param("100")
+    public int tags;
+
+    /** The fraction of merge commits. */
+    @Param("0.1")
+    public double mergeRatio;
+
+    /** The number of files. */
+    @Param({ "1000", "10000" })
+    public int files;
+
+    /** The number of modified and untracked files in the work tree. */
+    @Param({ "0", "10" })
+    public int dirty;
+
+    /**
+     * The provider, {@code core} for the JGit based provider,
+     * {@code cli} for the provider that uses the {@code git} command.
+     */
+    @Param({ "core", "cli" })
+    public String provider;
+
+    /**
+     * Whether the repository has a commit-graph with changed-path
+     * Bloom filters, which JGit is configured to read.
+     */
+    @Param({ "false", "true" })
+    public boolean commitGraph;
+
+    /**
+     * The sub-directory that the file selection is restricted to,
+     * relative to the work tree, or empty for all files.
+     */
+    @Param({ "", "m000/d00" })
+    public String subDirectory;
+
+    private Path directory;
+    private Repository repository;
+    private String[] tagNames;
+
+    /**
+     * Generates the repository.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws ConfigInvalidException if JGit's configuration is invalid
+     */
+    @Setup(Level.Trial)
+    public void generate() throws IOException, ConfigInvalidException {
+        directory = Files.createTempDirectory("gitversioning-bench");
+        repository = new RepositoryGenerator().commits(commits).tags(tags)
+            .mergeRatio(mergeRatio).files(files).dirtyFiles(dirty)
+            .untrackedFiles(dirty).commitGraph(commitGraph)
+            .generate(directory);
+        if (commitGraph) {
+            SystemReader.getInstance().getJGitConfig().setBoolean(
+                "commitGraph", null, "readChangedPaths", true);
+        }
+        tagNames = IntStream.range(0, tags)
+            .mapToObj(RepositoryGenerator::tagName).toArray(String[]::new);
+    }
+
+    /**
+     * Closes and deletes the repository.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws ConfigInvalidException if JGit's configuration is invalid
+     */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException, ConfigInvalidException {
+        if (commitGraph) {
+            SystemReader.getInstance().getJGitConfig()
+                .unset("commitGraph", null, "readChangedPaths");
+        }
+        repository.close();
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder())
+                .toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Returns a new evaluator for the repository, with the file
+     * selection restricted to the {@link #subDirectory} if set.
+     *
+     * @return the evaluator
+     */
+    public VersionEvaluator evaluator() {
+        var evaluator = "cli".equals(provider)
+            ? new org.jdrupes.gitversioning.cli.VersionEvaluatorProvider()
+            : new VersionEvaluatorProvider();
+        evaluator.repository(repository);
+        if (!subDirectory.isEmpty()) {
+            evaluator.subDirectory(Path.of(subDirectory));
+        }
+        return evaluator;
+    }
+
+    /**
+     * Returns the repository.
+     *
+     * @return the repository
+     */
+    public Repository repository() {
+        return repository;
+    }
+
+    /**
+     * Returns the names of the version tags, oldest first.
+     *
+     * @return the tag names
+     */
+    public String[] tagNames() {
+        return tagNames.clone();
+    }
+}
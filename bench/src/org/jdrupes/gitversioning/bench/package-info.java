@@ -0,0 +1,35 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JMH benchmarks for the GitVersioning implementations.
+ *
+ * <p>The benchmarks run against repositories created by the
+ * {@link org.jdrupes.gitversioning.bench.RepositoryGenerator}. The
+ * size of the repositories, the provider used, the availability of
+ * a commit-graph and the file selection are parameters of the
+ * {@link org.jdrupes.gitversioning.bench.RepositoryState} and can be
+ * overridden on the command line. The benchmarks are run with JMH's
+ * main class and the project's class path, e.g.
+ * {@code java -cp <classpath> org.openjdk.jmh.Main EvaluatorBenchmark
+ * -p commits=100000 -p provider=core}.
+ *
+ * <p>The project is neither published nor included in the API
+ * documentation.
+ */
+package org.jdrupes.gitversioning.bench;
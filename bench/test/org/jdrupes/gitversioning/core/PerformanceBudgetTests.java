@@ -0,0 +1,216 @@
+package org.jdrupes.gitversioning.core;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
+import org.eclipse.jgit.lib.Repository;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.bench.RepositoryGenerator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks time, allocation and cache budgets on a generated
+ * repository. The budgets are meant to catch scaling regressions
+ * (such as an accidental walk of the complete history or a copy of
+ * the cached commits), not small slowdowns.
+ *
+ * <p>By default, the generated repository is small (2,000 commits,
+ * 200 tags and 1,000 files) and the suite runs with the other tests.
+ * If the system property {@code gitversioning.perf} is {@code true},
+ * a large repository (100,000 commits, 10,000 tags and 50,000 files)
+ * is generated instead. The size can also be set with the system
+ * properties {@code gitversioning.perf.commits},
+ * {@code gitversioning.perf.tags} and {@code gitversioning.perf.files}.
+ * The budgets are derived from the size of the repository.
+ */
+class PerformanceBudgetTests {
+
+    private static final boolean LARGE
+        = Boolean.getBoolean("gitversioning.perf");
+    private static final int COMMITS = Integer
+        .getInteger("gitversioning.perf.commits", LARGE ? 100_000 : 2000);
+    private static final int TAGS = Integer
+        .getInteger("gitversioning.perf.tags", LARGE ? 10_000 : 200);
+    private static final int FILES = Integer
+        .getInteger("gitversioning.perf.files", LARGE ? 50_000 : 1000);
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+
+    @TempDir
+    static Path tempDir;
+    private static Repository repository;
+    private AggregatingMetricsListener metrics;
+
+    @BeforeAll
+    static void generate() throws Exception {
+        repository = new RepositoryGenerator().commits(COMMITS).tags(TAGS)
+            .files(FILES).dirtyFiles(10).untrackedFiles(10)
+            .generate(tempDir);
+    }
+
+    @AfterAll
+    static void close() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    @BeforeEach
+    void clearCaches() {
+        VersionEvaluatorProvider.clearCaches();
+        metrics = new AggregatingMetricsListener();
+    }
+
+    /**
+     * The cost of a call.
+     *
+     * @param time the wall time
+     * @param allocated the bytes allocated by the calling thread
+     * @param cachedCommits the commits in the reachable commits cache
+     * after the call
+     */
+    private record Cost(Duration time, long allocated, long cachedCommits) {
+    }
+
+    /**
+     * Measures the cost of invoking the call. Only the metrics
+     * reported during the call are kept.
+     */
+    private Cost measure(Supplier<?> call) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        metrics.reset();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        assertNotNull(call.get());
+        var cost = new Cost(Duration.ofNanos(System.nanoTime() - start),
+            threads.getThreadAllocatedBytes(threadId) - allocatedBefore,
+            VersionEvaluatorProvider.reachableCacheSize());
+        // The cache holds the reachable commits of a single head
+        assertTrue(cost.cachedCommits() <= COMMITS, "Cached "
+            + cost.cachedCommits() + " commits, budget is " + COMMITS);
+        return cost;
+    }
+
+    private VersionEvaluatorProvider newProvider() {
+        var provider = new VersionEvaluatorProvider().repository(repository);
+        provider.metricsListener(metrics);
+        return provider;
+    }
+
+    /**
+     * Returns the given base plus the given cost per item.
+     */
+    private static Duration scaled(long baseMillis, long microsPerItem,
+            int items) {
+        return Duration.ofMillis(baseMillis)
+            .plus(Duration.ofNanos(microsPerItem * 1000 * items));
+    }
+
+    private static void assertBudget(Cost cost, Duration time,
+            long allocated) {
+        assertTrue(cost.time().compareTo(time) <= 0,
+            "Took " + cost.time() + ", budget is " + time);
+        assertTrue(cost.allocated() <= allocated, "Allocated "
+            + cost.allocated() / KB + " KB, budget is " + allocated / KB
+            + " KB");
+    }
+
+    /**
+     * Returns the maximum number of commits between HEAD and the
+     * latest tag.
+     */
+    private static long commitsSinceTag() {
+        return 2L * COMMITS / (TAGS + 1) + 10;
+    }
+
+    @Test
+    void versionWithoutCache() {
+        var cost = measure(() -> newProvider().version());
+        // Collects the reachable commits, i.e. walks the history once
+        assertBudget(cost, scaled(2000, 100, COMMITS),
+            16 * MB + 16 * KB * COMMITS);
+        assertEquals(1, metrics.count(Counter.CACHE_MISSES));
+        assertTrue(metrics.count(Counter.COMMITS_WALKED) <= COMMITS + 1);
+    }
+
+    @Test
+    void versionWithCache() {
+        newProvider().version();
+        var cost = measure(() -> newProvider().version());
+        // Must neither walk the history nor copy the cached commits,
+        // the costs depend on the number of tags only
+        assertBudget(cost, scaled(500, 20, TAGS), 2 * MB + 4 * KB * TAGS);
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+        assertTrue(metrics.count(Counter.CACHE_HITS) > 0);
+        assertTrue(metrics.count(Counter.COMMITS_WALKED)
+            <= commitsSinceTag());
+    }
+
+    @Test
+    void dirtyFiles() {
+        var cost = measure(() -> {
+            try (var files = newProvider().dirtyFiles()) {
+                return files.count();
+            }
+        });
+        assertBudget(cost, scaled(2000, 100, FILES),
+            16 * MB + 4 * KB * FILES);
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+        assertEquals(0, metrics.count(Counter.COMMITS_WALKED));
+    }
+
+    @Test
+    void modifiedFiles() {
+        newProvider().version();
+        var cost = measure(() -> {
+            try (var files = newProvider().modifiedFiles()) {
+                return files.count();
+            }
+        });
+        // Walks only the commits since the latest tag
+        assertBudget(cost, scaled(1000, 50, TAGS), 4 * MB + 8 * KB * TAGS);
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+        assertTrue(metrics.count(Counter.COMMITS_WALKED)
+            <= commitsSinceTag());
+    }
+
+    @Test
+    void modifiedFilesWithChangedPathsIndex() throws IOException {
+        newProvider().version();
+        long found = 0;
+        for (int run = 0; run < 2; run++) {
+            var files = new long[1];
+            var cost = measure(() -> {
+                try (var modified = newProvider().changedPathsIndex(true)
+                    .subDirectory(Path.of("m000", "d00")).modifiedFiles()) {
+                    files[0] = modified.count();
+                    return files[0];
+                }
+            });
+            assertBudget(cost, scaled(1000, 50, TAGS),
+                4 * MB + 8 * KB * TAGS);
+            found = files[0];
+        }
+        // The second run looks up all commits in the index and diffs
+        // only those that changed the directory
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+        assertTrue(metrics.count(Counter.TREES_DIFFED) <= found);
+
+        // Only the commits since the latest tag have been recorded
+        try (var index = ChangedPathsIndex.forFile(repository.getDirectory()
+            .toPath().resolve("gitversioning").resolve("changed-paths"))) {
+            assertTrue(index.size() > 0);
+            assertTrue(index.size() <= commitsSinceTag(), "Indexed "
+                + index.size() + " commits, budget is " + commitsSinceTag());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * A running {@code git} command whose output is consumed as a
+ * stream of records.
+ *
+ * <p>The command is run with the repository's directory and work tree
+ * passed explicitly and with optional locks disabled, so that it never
+ * modifies the repository. The executable can be set with the system
+ * property {@value #GIT_PROPERTY}, it defaults to {@code git}. The
+ * command's error output is collected and reported if the command
+ * fails.
+ */
+final class GitCommand implements Closeable {
+
+    /** The system property used to configure the executable. */
+    /* default */ static final String GIT_PROPERTY
+        = "org.jdrupes.gitversioning.cli.git";
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Map<String, Boolean> available
+        = new ConcurrentHashMap<>();
+    private final List<String> command;
+    private final Process process;
+    private final InputStream output;
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final Thread errorReader;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+    /**
+     * Returns the configured executable.
+     *
+     * @return the executable
+     */
+    /* default */ static String executable() {
+        return System.getProperty(GIT_PROPERTY, "git");
+    }
+
+    /**
+     * Checks if the configured executable can be run. The result
+     * is cached.
+     *
+     * @return the result
+     */
+    /* default */ static boolean isAvailable() {
+        return available.computeIfAbsent(executable(), git -> {
+            try {
+                var process = new ProcessBuilder(git, "--version")
+                    .redirectErrorStream(true).start();
+                process.getOutputStream().close();
+                process.getInputStream()
+                    .transferTo(OutputStream.nullOutputStream());
+                return process.waitFor() == 0;
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Starts the command.
+     *
+     * @param repository the repository
+     * @param args the arguments
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @SuppressWarnings("PMD.EmptyCatchBlock")
+    /* default */ GitCommand(Repository repository, List<String> args)
+            throws IOException {
+        command = new ArrayList<>();
+        command.add(executable());
+        command.add("--no-optional-locks");
+        command.add("--git-dir=" + repository.getDirectory().getPath());
+        if (!repository.isBare()) {
+            command.add("--work-tree=" + repository.getWorkTree().getPath());
+        }
+        command.addAll(args);
+        var builder = new ProcessBuilder(command);
+        if (!repository.isBare()) {
+            builder.directory(repository.getWorkTree());
+        }
+        process = builder.start();
+        process.getOutputStream().close();
+        output = new BufferedInputStream(process.getInputStream());
+        // Not a virtual thread, the command may be run while the
+        // invoking (virtual) thread is pinned to its carrier.
+        errorReader = Thread.ofPlatform().daemon().start(() -> {
+            try (var err = process.getErrorStream()) {
+                err.transferTo(errors);
+            } catch (IOException e) {
+                // Reported by exit code
+            }
+        });
+    }
+
+    /**
+     * Returns the next record, i.e. the bytes up to (excluding) the
+     * next separator or the end of the output, decoded as UTF-8.
+     *
+     * @param separator the separator
+     * @return the record or {@code null} if the end of the output
+     * has been reached
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @SuppressWarnings("PMD.AvoidReturningNull")
+    /* default */ String next(char separator) throws IOException {
+        record.reset();
+        int data;
+        while ((data = output.read()) >= 0 && data != separator) {
+            record.write(data);
+        }
+        if (data < 0 && record.size() == 0) {
+            return null;
+        }
+        return record.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consumes the remaining output and waits for the command to
+     * terminate.
+     *
+     * @throws IOException if the command failed
+     */
+    /* default */ void finish() throws IOException {
+        output.transferTo(OutputStream.nullOutputStream());
+        // The output has been consumed, so waiting is short. Like the
+        // JGit based evaluation, don't react to an interrupt here.
+        boolean interrupted = false;
+        while (true) {
+            try {
+                process.waitFor();
+                errorReader.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(String.join(" ", command)
+                + " failed with exit code " + process.exitValue() + ": "
+                + errors.toString(StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    /**
+     * Terminates the command if it is still running.
+     */
+    @Override
+    @SuppressWarnings("PMD.EmptyCatchBlock")
+    public void close() {
+        if (process.isAlive()) {
+            process.destroy();
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            // Nothing we can do
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+import org.jdrupes.gitversioning.api.UntrackedFiles;
+
+/**
+ * Implementation of
+ * {@link org.jdrupes.gitversioning.api.VersionEvaluatorProvider}
+ * that uses the native {@code git} command line tool to evaluate the
+ * repository's state.
+ *
+ * <p>The status of the work tree is obtained with
+ * {@code git status --porcelain=v2 -z}, the tags with
+ * {@code git for-each-ref}, the reachable commits with
+ * {@code git rev-list} and the modified files with {@code git log}.
+ * The output of the commands is consumed as a stream, i.e. the
+ * history walk stops (and the command is terminated) as soon as
+ * the caller has found what it is looking for.
+ *
+ * <p>As a consequence, {@code git}'s own optimizations such as
+ * the file system monitor ({@code core.fsmonitor}), the untracked cache
+ * ({@code core.untrackedCache}), commit-graphs and bitmaps are used
+ * if they are configured for the repository. The version evaluation
+ * and all options of the JGit based
+ * {@link org.jdrupes.gitversioning.core.VersionEvaluatorProvider}
+ * are supported with the same results.
+ *
+ * <p>The provider has a higher {@link #priority() priority} than the
+ * JGit based provider. It {@link #supports(Repository) supports}
+ * repositories in the file system, provided that the {@code git}
+ * executable can be run.
+ */
+public class VersionEvaluatorProvider
+        extends org.jdrupes.gitversioning.core.VersionEvaluatorProvider {
+
+    private static final char NUL = '\0';
+    private static final String GITLINK_MODE = "160000";
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile Map<String, ObjectId> tagCommits = Map.of();
+
+    /**
+     * Creates a new evaluator provider with default tag filter and processor.
+     */
+    public VersionEvaluatorProvider() {
+        // Make javadoc happy.
+    }
+
+    /**
+     * Returns 10.
+     *
+     * @return the priority
+     */
+    @Override
+    public int priority() {
+        return 10;
+    }
+
+    @Override
+    public boolean supports(Repository repository) {
+        return repository.getDirectory() != null
+            && (repository.isBare() || repository.getWorkTree().isDirectory())
+            && GitCommand.isAvailable();
+    }
+
+    private GitCommand git(String... args) {
+        return git(List.of(args));
+    }
+
+    private GitCommand git(List<String> args) {
+        try {
+            return new GitCommand(repository(), args);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the command's output as stream of records. The command
+     * is terminated when the stream is closed.
+     */
+    private static Stream<String> records(GitCommand command,
+            char separator) {
+        var spliterator = new AbstractSpliterator<String>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                try {
+                    var record = command.next(separator);
+                    if (record == null) {
+                        command.finish();
+                        return false;
+                    }
+                    action.accept(record);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+            .onClose(command::close);
+    }
+
+    private static String pathspec(String path) {
+        return ":(literal)" + path;
+    }
+
+    @Override
+    protected Stream<String> dirtyPaths() {
+        var directories = scopeDirectories();
+        var submoduleMode = ignoreSubmodules();
+        boolean separateSubmodules = scopedSubmodules() && directories == null
+            && submoduleMode != IgnoreSubmoduleMode.ALL;
+        var args = new ArrayList<>(List.of("status", "--porcelain=v2", "-z",
+            "--untracked-files=" + switch (untrackedFiles()) {
+            case NONE -> "no";
+            case FIRST_MATCH -> "normal";
+            default -> "all";
+            }));
+        if (separateSubmodules) {
+            args.add("--ignore-submodules=all");
+        } else if (submoduleMode != null) {
+            args.add("--ignore-submodules="
+                + submoduleMode.name().toLowerCase(Locale.ROOT));
+        }
+        if (directories != null) {
+            // All matching files are in the directories
+            args.add("--");
+            directories.stream().map(VersionEvaluatorProvider::pathspec)
+                .forEach(args::add);
+        }
+        var result = statusPaths(args);
+        if (separateSubmodules) {
+            result = Stream.concat(result, Stream.of(0)
+                .flatMap(i -> submodulesInScope()));
+        }
+        return result;
+    }
+
+    private Stream<String> statusPaths(List<String> args) {
+        // Renamed entries are followed by a record with the original path
+        var origPathFollows = new boolean[1];
+        return records(git(args), NUL).mapMulti((record, consumer) -> {
+            if (origPathFollows[0]) {
+                origPathFollows[0] = false;
+                consumer.accept(record);
+                return;
+            }
+            switch (record.charAt(0)) {
+            case '1' -> consumer.accept(field(record, 8));
+            case '2' -> {
+                consumer.accept(field(record, 9));
+                origPathFollows[0] = true;
+            }
+            case 'u' -> consumer.accept(field(record, 10));
+            case '?' -> untracked(record.substring(2), consumer);
+            default -> {
+                // Headers and ignored files
+            }
+            }
+        });
+    }
+
+    /**
+     * Returns the part of the record after the given number of
+     * space separated fields.
+     */
+    private static String field(String record, int skip) {
+        int pos = 0;
+        for (int i = 0; i < skip; i++) {
+            pos = record.indexOf(' ', pos) + 1;
+        }
+        return record.substring(pos);
+    }
+
+    /**
+     * Untracked directories are only reported with
+     * {@link UntrackedFiles#FIRST_MATCH}. Report the first matching
+     * file in the directory.
+     */
+    private void untracked(String path, Consumer<? super String> consumer) {
+        if (!path.endsWith("/")) {
+            consumer.accept(path);
+            return;
+        }
+        try (var files = records(git("ls-files", "-z", "--others",
+            "--exclude-standard", "--", pathspec(path)), NUL)) {
+            files.filter(p -> matches(Path.of(p))).findFirst()
+                .ifPresent(consumer);
+        }
+    }
+
+    /**
+     * Evaluates the status of the submodules that match the
+     * file selection.
+     */
+    private Stream<String> submodulesInScope() {
+        List<String> submodules;
+        try (var entries = records(git("ls-files", "-z", "--stage"), NUL)) {
+            submodules = entries.filter(e -> e.startsWith(GITLINK_MODE + " "))
+                .map(e -> e.substring(e.indexOf('\t') + 1))
+                .filter(p -> matches(Path.of(p))).toList();
+        }
+        if (submodules.isEmpty()) {
+            return Stream.empty();
+        }
+        var args = new ArrayList<>(List.of("status", "--porcelain=v2", "-z",
+            "--untracked-files=no"));
+        if (ignoreSubmodules() != null) {
+            args.add("--ignore-submodules="
+                + ignoreSubmodules().name().toLowerCase(Locale.ROOT));
+        }
+        args.add("--");
+        submodules.stream().map(VersionEvaluatorProvider::pathspec)
+            .forEach(args::add);
+        return statusPaths(args);
+    }
+
+    @Override
+    protected List<String> tagNames() throws IOException {
+        var names = new ArrayList<String>();
+        var commits = new HashMap<String, ObjectId>();
+        try (var command = git("for-each-ref", "--format=%(refname:strip=2)"
+            + "%00%(objecttype)%00%(objectname)%00%(*objecttype)"
+            + "%00%(*objectname)", Constants.R_TAGS)) {
+            String line;
+            while ((line = command.next('\n')) != null) {
+                var fields = line.split("\0", -1);
+                names.add(fields[0]);
+                if (Constants.TYPE_COMMIT.equals(fields[1])) {
+                    commits.put(fields[0], ObjectId.fromString(fields[2]));
+                } else if (Constants.TYPE_COMMIT.equals(fields[3])) {
+                    commits.put(fields[0], ObjectId.fromString(fields[4]));
+                }
+            }
+            command.finish();
+        }
+        tagCommits = commits;
+        return names;
+    }
+
+    @Override
+    protected Optional<ObjectId> taggedCommit(String tag) {
+        var commits = tagCommits;
+        if (commits.containsKey(tag)) {
+            return Optional.of(commits.get(tag));
+        }
+        return super.taggedCommit(tag);
+    }
+
+    @Override
+    protected Set<ObjectId> reachableCommits(ObjectId headId) {
+        try (var commits = records(git("rev-list", headId.name()), '\n')) {
+            var reachable = new HashSet<ObjectId>();
+            commits.map(ObjectId::fromString).forEach(reachable::add);
+            return reachable;
+        } catch (UncheckedIOException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Streams the output of {@code git log}. The persistent index of
+     * changed paths is maintained by the JGit based history walk, so
+     * if the {@link #changedPathsIndex(boolean) index} is enabled, the
+     * evaluation is delegated to the base class.
+     */
+    @Override
+    protected Stream<Path> modifiedFiles(ObjectId headId, ObjectId taggedId)
+            throws IOException {
+        if (changedPathsIndex()) {
+            return super.modifiedFiles(headId, taggedId);
+        }
+        var tagged = taggedId.name();
+        var records = records(git("log", "--no-renames", "--no-ext-diff",
+            "--no-show-signature", "--diff-merges=first-parent", "--name-only",
+            "-z", "--format=%x01%H", headId.name()), NUL);
+        var iterator = records.iterator();
+        var spliterator = new AbstractSpliterator<Path>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean finished;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Path> action) {
+                while (!finished && iterator.hasNext()) {
+                    var record = iterator.next();
+                    if (!record.isEmpty() && record.charAt(0) == '\u0001') {
+                        // Next commit
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new CancellationException(
+                                "History walk interrupted");
+                        }
+                        if (record.substring(1).equals(tagged)) {
+                            finished = true;
+                        }
+                        continue;
+                    }
+                    var path = record.startsWith("\n") ? record.substring(1)
+                        : record;
+                    if (path.isEmpty()) {
+                        continue;
+                    }
+                    var file = Path.of(path);
+                    if (matches(file)) {
+                        action.accept(file);
+                        return true;
+                    }
+                }
+                finished = true;
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+            .onClose(records::close);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Implementation of the GitVersioning API that uses the native
+ * {@code git} command line tool.
+ *
+ * <p>Provides {@link org.jdrupes.gitversioning.cli.VersionEvaluatorProvider},
+ * which evaluates the status of the work tree and walks the history
+ * with {@code git}. This makes features such as the file system monitor,
+ * the untracked cache, commit-graphs and bitmaps available for
+ * large repositories.
+ */
+package org.jdrupes.gitversioning.cli;
@@ -0,0 +1,64 @@
+package org.jdrupes.gitversioning.cli;
+
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
+import org.jdrupes.gitversioning.api.VersionEvaluatorProvider;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProviderSelectionTests {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(VersionEvaluatorProvider.PROVIDER_PROPERTY);
+    }
+
+    @Test
+    void highestPriorityIsSelected() throws Exception {
+        try (var git = Git.init().setDirectory(tempDir.toFile()).call()) {
+            var evaluator = VersionEvaluator.forRepository(git.getRepository());
+            assertEquals(
+                org.jdrupes.gitversioning.cli.VersionEvaluatorProvider.class,
+                evaluator.getClass());
+            assertSame(git.getRepository(), evaluator.repository());
+        }
+    }
+
+    @Test
+    void unsupportedRepositoryFallsBack() {
+        var repository = new InMemoryRepository(
+            new DfsRepositoryDescription("test"));
+        var evaluator = VersionEvaluator.forRepository(repository);
+        assertEquals(
+            org.jdrupes.gitversioning.core.VersionEvaluatorProvider.class,
+            evaluator.getClass());
+    }
+
+    @Test
+    void propertyOverridesSelection() throws Exception {
+        System.setProperty(VersionEvaluatorProvider.PROVIDER_PROPERTY,
+            org.jdrupes.gitversioning.core.VersionEvaluatorProvider.class
+                .getName());
+        try (var git = Git.init().setDirectory(tempDir.toFile()).call()) {
+            assertEquals(
+                org.jdrupes.gitversioning.core.VersionEvaluatorProvider.class,
+                VersionEvaluator.forRepository(git.getRepository())
+                    .getClass());
+        }
+        System.setProperty(VersionEvaluatorProvider.PROVIDER_PROPERTY,
+            "no.such.Provider");
+        try (var git = Git.open(tempDir.toFile())) {
+            assertThrows(NoSuchElementException.class,
+                () -> VersionEvaluator.forRepository(git.getRepository()));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.jdrupes.gitversioning.core;
+
+/**
+ * Runs the tag processor tests with the native git based provider.
+ */
+class CliMavenStyleTagProcessorTests extends MavenStyleTagProcessorTests {
+
+    @Override
+    /* default */ VersionEvaluatorProvider newProvider() {
+        return new org.jdrupes.gitversioning.cli.VersionEvaluatorProvider();
+    }
+}
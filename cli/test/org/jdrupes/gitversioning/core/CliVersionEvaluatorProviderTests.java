@@ -0,0 +1,12 @@
+package org.jdrupes.gitversioning.core;
+
+/**
+ * Runs the provider tests with the native git based provider.
+ */
+class CliVersionEvaluatorProviderTests extends VersonEvaluatorProviderTests {
+
+    @Override
+    /* default */ VersionEvaluatorProvider newProvider() {
+        return new org.jdrupes.gitversioning.cli.VersionEvaluatorProvider();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Repository;
+import org.jdrupes.gitversioning.api.MetricsListener;
+
+/**
+ * A {@link MetricsListener} that aggregates the reported metrics
+ * in memory. The durations of each phase are recorded in a
+ * {@link Histogram}, the counts are summed up. The metrics of all
+ * repositories are aggregated.
+ *
+ * <p>Example:
+ * <pre>
+ * var metrics = new AggregatingMetricsListener();
+ * var version = VersionEvaluator.forRepository(repository)
+ *     .metricsListener(metrics).version();
+ * var walked = metrics.count(MetricsListener.Counter.COMMITS_WALKED);
+ * </pre>
+ */
+public class AggregatingMetricsListener implements MetricsListener {
+
+    private final Map<Phase, Histogram> histograms
+        = new EnumMap<>(Phase.class);
+    private final Map<Counter, LongAdder> counts
+        = new EnumMap<>(Counter.class);
+
+    /**
+     * Creates a new listener.
+     */
+    public AggregatingMetricsListener() {
+        for (var phase : Phase.values()) {
+            histograms.put(phase, new Histogram());
+        }
+        for (var counter : Counter.values()) {
+            counts.put(counter, new LongAdder());
+        }
+    }
+
+    @Override
+    public void phaseCompleted(Repository repository, Phase phase,
+            Duration duration) {
+        histograms.get(phase).record(duration);
+    }
+
+    @Override
+    public void counted(Repository repository, Counter counter,
+            long count) {
+        counts.get(counter).add(count);
+    }
+
+    /**
+     * Returns the histogram of the durations of the given phase.
+     *
+     * @param phase the phase
+     * @return the histogram
+     */
+    public Histogram histogram(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    /**
+     * Returns the sum of the counts reported for the given counter.
+     *
+     * @param counter the counter
+     * @return the sum
+     */
+    public long count(Counter counter) {
+        return counts.get(counter).sum();
+    }
+
+    /**
+     * Resets all histograms and counts.
+     */
+    public void reset() {
+        histograms.values().forEach(Histogram::reset);
+        counts.values().forEach(LongAdder::reset);
+    }
+
+    @Override
+    public String toString() {
+        return Stream.concat(
+            histograms.entrySet().stream()
+                .filter(e -> e.getValue().count() > 0)
+                .map(e -> e.getKey() + "=" + e.getValue()),
+            counts.entrySet().stream().filter(e -> e.getValue().sum() > 0)
+                .map(e -> e.getKey() + "=" + e.getValue().sum()))
+            .collect(Collectors.joining(", ", "AggregatingMetricsListener [",
+                "]"));
+    }
+
+    /**
+     * A histogram of durations. The durations are recorded in buckets
+     * with exponentially growing bounds (powers of two nanoseconds),
+     * percentiles are therefore accurate within a factor of two.
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = Long.SIZE;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram() {
+            // Created by the listener.
+        }
+
+        private void record(Duration duration) {
+            long nanos = Math.max(0, duration.toNanos());
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos)
+                - (nanos == 0 ? 0 : 1));
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            total.reset();
+            max.reset();
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the sum of the recorded durations.
+         *
+         * @return the total
+         */
+        public Duration total() {
+            return Duration.ofNanos(total.sum());
+        }
+
+        /**
+         * Returns the longest recorded duration.
+         *
+         * @return the maximum
+         */
+        public Duration max() {
+            return Duration.ofNanos(max.get());
+        }
+
+        /**
+         * Returns the mean of the recorded durations.
+         *
+         * @return the mean, zero if no durations have been recorded
+         */
+        public Duration mean() {
+            long recorded = count.sum();
+            return recorded == 0 ? Duration.ZERO
+                : Duration.ofNanos(total.sum() / recorded);
+        }
+
+        /**
+         * Returns an upper bound for the given percentile of the
+         * recorded durations.
+         *
+         * @param percentile the percentile (between 0 and 100)
+         * @return the upper bound, zero if no durations have been
+         * recorded
+         */
+        public Duration percentile(double percentile) {
+            long recorded = count.sum();
+            if (recorded == 0) {
+                return Duration.ZERO;
+            }
+            long rank = Math.max(1, (long) Math.ceil(recorded
+                * Math.min(100, Math.max(0, percentile)) / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long bound = i >= BUCKETS - 2 ? Long.MAX_VALUE
+                        : (1L << i + 1) - 1;
+                    return Duration.ofNanos(Math.min(bound, max.get()));
+                }
+            }
+            return max();
+        }
+
+        @Override
+        public String toString() {
+            return "[count=" + count() + ", mean=" + mean() + ", p99="
+                + percentile(99) + ", max=" + max() + "]";
+        }
+    }
+}
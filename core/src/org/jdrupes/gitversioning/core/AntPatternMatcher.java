@@ -20,6 +20,7 @@ package org.jdrupes.gitversioning.core;
 
 import io.github.azagniotov.matcher.AntPathMatcher;
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Matches paths against an Ant-style pattern.
@@ -48,4 +49,33 @@ public class AntPatternMatcher implements IncludeMatcher {
         return pathMatcher.isMatch(pattern, path.toString());
     }
 
+    @Override
+    public Optional<String> directory() {
+        return literalDirectory(pattern, "*?");
+    }
+
+    /**
+     * Returns the literal directory prefix of a path pattern, i.e. all
+     * leading segments that contain none of the given wildcard characters.
+     *
+     * @param pattern the pattern
+     * @param wildcards the characters that start a wildcard
+     * @return the directory
+     */
+    /* default */ static Optional<String> literalDirectory(String pattern,
+            String wildcards) {
+        int end = pattern.length();
+        for (int i = 0; i < pattern.length(); i++) {
+            if (wildcards.indexOf(pattern.charAt(i)) >= 0) {
+                end = i;
+                break;
+            }
+        }
+        int lastSlash = pattern.lastIndexOf('/', end - 1);
+        if (lastSlash <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(pattern.substring(0, lastSlash));
+    }
+
 }
@@ -0,0 +1,373 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * An append-only, memory-mapped index that records for each commit
+ * the hashes of the paths (and all their leading directories) that
+ * the commit changed relative to its first parent.
+ *
+ * <p>The file consists of a header (magic, version and the end of
+ * the records) followed by records made up of the 20 byte commit id,
+ * the number of hashes and the sorted hashes. Records are only ever
+ * appended, so the index can be shared by successive builds and by
+ * several processes. A record becomes visible when the end in the
+ * header has been updated. A record that has been only partially
+ * written (e.g. because the writing process was killed) is therefore
+ * ignored and overwritten by the next append.
+ *
+ * <p>The file is grown geometrically and mapped into memory once
+ * for each growth, not for each appended record.
+ *
+ * <p>Instances are shared by all users of a file. Each invocation
+ * of {@link #forFile(Path)} must be balanced by an invocation of
+ * {@link #close()}. The file is closed when the last user has
+ * closed the index.
+ *
+ * <p>As the index stores hashes, a lookup can yield false positives
+ * but never false negatives.
+ */
+@SuppressWarnings("PMD.AvoidUsingVolatile")
+final class ChangedPathsIndex implements Closeable {
+
+    private static final int MAGIC = 0x47_56_43_50;
+    private static final int VERSION = 2;
+    private static final int END_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+    private static final int ID_SIZE = 20;
+    private static final int MIN_CAPACITY = 64 * 1024;
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Map<Path, ChangedPathsIndex> indices
+        = new ConcurrentHashMap<>();
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<ObjectId, Integer> offsets = new HashMap<>();
+    private volatile MappedByteBuffer mapped;
+    private int scanned;
+    private int users;
+
+    @SuppressWarnings("try")
+    private ChangedPathsIndex(Path file) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileLock ignored = channel.lock()) {
+            var header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (channel.size() < HEADER_SIZE
+                || header.getInt(0) == MAGIC && header.getInt(4) != VERSION) {
+                // New file or outdated format, (re-)initialize
+                header.clear();
+                header.putInt(MAGIC).putInt(VERSION).putInt(HEADER_SIZE)
+                    .flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+            } else if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a changed paths index: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        scanned = HEADER_SIZE;
+        refresh();
+    }
+
+    /**
+     * Returns the (shared) index stored in the given file, creating
+     * the file if it does not exist yet. The index must be
+     * {@link #close() closed} when no longer used.
+     *
+     * @param file the file
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    /* default */ static ChangedPathsIndex forFile(Path file)
+            throws IOException {
+        try {
+            return indices.compute(file.toAbsolutePath().normalize(),
+                (f, index) -> {
+                    try {
+                        var result
+                            = index == null ? new ChangedPathsIndex(f) : index;
+                        result.users++;
+                        return result;
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the index. The file is closed when the index has been
+     * released by all users.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        var closed = new boolean[1];
+        indices.computeIfPresent(file, (f, index) -> {
+            if (index != this || --users > 0) {
+                return index;
+            }
+            closed[0] = true;
+            return null;
+        });
+        if (closed[0]) {
+            synchronized (this) {
+                mapped = null;
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the file.
+     *
+     * @return the file
+     */
+    /* default */ Path file() {
+        return file;
+    }
+
+    /**
+     * Returns the number of commits recorded in the index.
+     *
+     * @return the number of commits
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    /* default */ int size() throws IOException {
+        synchronized (this) {
+            refresh();
+            return offsets.size();
+        }
+    }
+
+    /**
+     * Computes the hash of a raw (UTF-8 encoded) path as stored in
+     * the index.
+     *
+     * @param path the path
+     * @return the hash
+     */
+    /* default */ static int hash(byte[] path) {
+        return Arrays.hashCode(path);
+    }
+
+    /**
+     * Checks whether the commit has been recorded in the index.
+     *
+     * @param commit the commit
+     * @return {@code true} if the commit has been recorded
+     */
+    /* default */ boolean contains(AnyObjectId commit) {
+        return offset(commit) >= 0;
+    }
+
+    /**
+     * Checks if the commit may have changed any path with one of
+     * the given hashes (or a path below a directory with one of the
+     * given hashes).
+     *
+     * @param commit the commit
+     * @param hashes the hashes of the paths or directories
+     * @return {@link Boolean#FALSE} if the commit is known not to have
+     * changed any of the paths, {@link Boolean#TRUE} if it may have
+     * changed one of them and {@code null} if the commit has not been
+     * recorded yet
+     */
+    @SuppressWarnings({ "PMD.UseVarargs", "PMD.AvoidReturningNull" })
+    /* default */ Boolean mayHaveChanged(AnyObjectId commit, int[] hashes) {
+        int offset = offset(commit);
+        if (offset < 0) {
+            return null;
+        }
+        var buffer = mapped;
+        int count = buffer.getInt(offset + ID_SIZE);
+        int start = offset + ID_SIZE + 4;
+        for (int hash : hashes) {
+            // Binary search in the mapped record, no copying.
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = buffer.getInt(start + mid * 4);
+                if (value < hash) {
+                    low = mid + 1;
+                } else if (value > hash) {
+                    high = mid - 1;
+                } else {
+                    return Boolean.TRUE;
+                }
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Records the paths changed by the given commit. The hashes
+     * of the paths' leading directories are added automatically.
+     * Does nothing if the commit has already been recorded.
+     *
+     * @param commit the commit
+     * @param paths the changed paths
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @SuppressWarnings("try")
+    /* default */ void record(AnyObjectId commit, Collection<String> paths)
+            throws IOException {
+        var hashes = paths.stream().mapMultiToInt((path, consumer) -> {
+            var raw = path.getBytes(StandardCharsets.UTF_8);
+            consumer.accept(hash(raw));
+            for (int i = raw.length - 1; i > 0; i--) {
+                if (raw[i] == '/') {
+                    consumer.accept(hash(Arrays.copyOf(raw, i)));
+                }
+            }
+        }).distinct().sorted().toArray();
+        var record = ByteBuffer.allocate(ID_SIZE + 4 + hashes.length * 4);
+        commit.copyRawTo(record.array(), 0);
+        record.position(ID_SIZE);
+        record.putInt(hashes.length);
+        for (int hash : hashes) {
+            record.putInt(hash);
+        }
+        record.flip();
+        synchronized (this) {
+            try (FileLock ignored = channel.lock()) {
+                // Another process may have appended in the meantime
+                refresh();
+                if (contains(commit)) {
+                    return;
+                }
+                // Overwrite any partially written record, then commit
+                long end = (long) scanned + record.limit();
+                if (end > Integer.MAX_VALUE) {
+                    throw new IOException("Changed paths index too large: "
+                        + file);
+                }
+                ensureCapacity(end);
+                channel.write(record, scanned);
+                channel.write(ByteBuffer.allocate(4).putInt(0, (int) end),
+                    END_OFFSET);
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * Grows the file geometrically (and maps it again) if the
+     * required size exceeds its current size.
+     */
+    private void ensureCapacity(long required) throws IOException {
+        long size = channel.size();
+        if (required <= size) {
+            return;
+        }
+        long capacity = Math.min(Integer.MAX_VALUE,
+            Math.max(required, Math.max(MIN_CAPACITY, size * 2)));
+        channel.write(ByteBuffer.allocate(1), capacity - 1);
+        remap();
+    }
+
+    private void remap() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size());
+    }
+
+    private int offset(AnyObjectId commit) {
+        synchronized (this) {
+            var offset = offsets.get(commit);
+            if (offset == null) {
+                try {
+                    if (mapped.getInt(END_OFFSET) > scanned && refresh()) {
+                        offset = offsets.get(commit);
+                    }
+                } catch (IOException e) {
+                    return -1;
+                }
+            }
+            return offset == null ? -1 : offset;
+        }
+    }
+
+    /**
+     * Adds the records appended since the last invocation. The file
+     * is mapped again only if another process has grown it beyond
+     * the mapped size.
+     *
+     * @return true, if records have been added
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean refresh() throws IOException {
+        synchronized (this) {
+            int size = mapped.getInt(END_OFFSET);
+            if (size > mapped.capacity()) {
+                remap();
+            }
+            var buffer = mapped;
+            size = Math.min(size, buffer.capacity());
+            var id = new byte[ID_SIZE];
+            boolean added = false;
+            int pos = scanned;
+            while (pos + ID_SIZE + 4 <= size) {
+                int count = buffer.getInt(pos + ID_SIZE);
+                int end = pos + ID_SIZE + 4 + count * 4;
+                if (count < 0 || end > size) {
+                    break;
+                }
+                buffer.get(pos, id);
+                offsets.putIfAbsent(ObjectId.fromRaw(id), pos);
+                added = true;
+                pos = end;
+            }
+            scanned = pos;
+            return added;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Per-repository timing statistics for the checks performed by
+ * {@link VersionEvaluatorProvider#anyChange()}.
+ *
+ * <p>Keeps an exponentially weighted moving average of the duration
+ * of each check. Checks without recorded durations are considered
+ * to be cheapest, so that every check is measured at least once.
+ *
+ * <p>The statistics are kept for the {@link #MAX_REPOSITORIES} most
+ * recently used repositories only. The statistics of a repository
+ * that has been evicted are simply collected again.
+ */
+final class CheckStatistics {
+
+    /**
+     * The checks.
+     */
+    /* default */ enum Check {
+        /** The check for dirty files. */
+        DIRTY_FILES,
+        /** The check for modified files. */
+        MODIFIED_FILES
+    }
+
+    /** The maximum number of repositories with statistics. */
+    /* default */ static final int MAX_REPOSITORIES = 64;
+    @SuppressWarnings({ "PMD.FieldNamingConventions", "serial" })
+    private static final Map<String, CheckStatistics> byRepository
+        = Collections.synchronizedMap(
+            new LinkedHashMap<String, CheckStatistics>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, CheckStatistics> eldest) {
+                    return size() > MAX_REPOSITORIES;
+                }
+            });
+    private static final int WEIGHT_SHIFT = 2;
+    private final AtomicLongArray averages
+        = new AtomicLongArray(Check.values().length);
+
+    private CheckStatistics() {
+        // Use forRepository.
+    }
+
+    /**
+     * Returns the statistics for the given repository.
+     *
+     * @param repository the repository
+     * @return the statistics
+     */
+    /* default */ static CheckStatistics forRepository(Repository repository) {
+        return byRepository.computeIfAbsent(repository.getIdentifier(),
+            k -> new CheckStatistics());
+    }
+
+    /**
+     * Records the duration of a check.
+     *
+     * @param check the check
+     * @param nanos the duration in nanoseconds
+     */
+    /* default */ void record(Check check, long nanos) {
+        long sample = Math.max(1, nanos);
+        averages.updateAndGet(check.ordinal(), average -> average == 0
+            ? sample : average + (sample - average >> WEIGHT_SHIFT));
+    }
+
+    /**
+     * Returns the average duration of the check in nanoseconds.
+     *
+     * @param check the check
+     * @return the average or 0 if the check has not been recorded yet
+     */
+    /* default */ long average(Check check) {
+        return averages.get(check.ordinal());
+    }
+
+    /**
+     * Returns the checks ordered by their average duration. Checks with
+     * equal averages keep their natural order.
+     *
+     * @return the checks
+     */
+    /* default */ List<Check> cheapestFirst() {
+        return Stream.of(Check.values())
+            .sorted(Comparator.comparingLong(this::average)).toList();
+    }
+}
@@ -28,6 +28,9 @@ import org.jdrupes.gitversioning.api.TagFilter;
  * <p>Matches tags against a pattern that must contain exactly one capture
  * group for the version string. The default pattern ({@link #VERSION_PATTERN})
  * matches standard semver-style versions.
+ *
+ * <p>The pattern is compiled when it is set, so a configured filter can
+ * be used by several threads concurrently.
  */
 public class DefaultTagFilter implements TagFilter {
 
@@ -39,7 +42,7 @@ public class DefaultTagFilter implements TagFilter {
         = "([0-9]+(?:\\.[0-9]+){0,2}(?:-[a-zA-Z0-9\\+\\-_]+)?)";
 
     private String pattern = VERSION_PATTERN;
-    private Pattern compiledPattern;
+    private Pattern compiledPattern = Pattern.compile(VERSION_PATTERN);
 
     /**
      * Creates a filter using the {@link #VERSION_PATTERN}.
@@ -57,6 +60,7 @@ public class DefaultTagFilter implements TagFilter {
      */
     public DefaultTagFilter pattern(String pattern) {
         this.pattern = pattern;
+        compiledPattern = Pattern.compile(pattern);
         return this;
     }
 
@@ -69,14 +73,12 @@ public class DefaultTagFilter implements TagFilter {
      */
     public DefaultTagFilter prepend(String prefix) {
         pattern = prefix + pattern;
+        compiledPattern = Pattern.compile(pattern);
         return this;
     }
 
     @Override
     public Optional<String> version(String tagName) {
-        if (compiledPattern == null) {
-            compiledPattern = Pattern.compile(pattern);
-        }
         var matcher = compiledPattern.matcher(tagName);
         if (matcher.find()) {
             return Optional.of(matcher.group(1));
@@ -0,0 +1,226 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+
+/**
+ * Keeps track of the dirty files in a repository's work tree for
+ * long-running processes that evaluate the status repeatedly.
+ *
+ * <p>The tracker evaluates the full status once and watches the
+ * work tree with a {@link WorktreeWatcher}. When the dirty paths are
+ * requested, the pending changes are collected and only the changed
+ * paths are compared with the index again, unless the watcher reports
+ * that a full status evaluation is required.
+ *
+ * <p>Submodules are inspected as configured with the
+ * {@link IgnoreSubmoduleMode} passed to
+ * {@link #forRepository(Repository, IgnoreSubmoduleMode)}.
+ *
+ * <p>Trackers are shared by all evaluators for a work tree that
+ * use the same submodule mode. Each invocation of
+ * {@link #forRepository(Repository, IgnoreSubmoduleMode)} must be balanced
+ * by an invocation of {@link #close()}. The watcher and the tracker's
+ * repository are closed when the last user has closed the tracker.
+ */
+final class DirtyFilesTracker implements Closeable {
+
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Map<Key, DirtyFilesTracker> trackers
+        = new ConcurrentHashMap<>();
+    private final Key key;
+    private final Repository repository;
+    private final WorktreeWatcher watcher;
+    private final Set<String> dirty = new TreeSet<>();
+    private final Set<String> untracked = new TreeSet<>();
+    private boolean rescan = true;
+    private int users;
+
+    /**
+     * Identifies a tracker.
+     *
+     * @param workTree the work tree
+     * @param submodules the submodule mode
+     */
+    private record Key(Path workTree, IgnoreSubmoduleMode submodules) {
+    }
+
+    private DirtyFilesTracker(Key key, Repository source)
+            throws IOException {
+        this.key = key;
+        repository = new FileRepositoryBuilder()
+            .setGitDir(source.getDirectory())
+            .setWorkTree(source.getWorkTree()).build();
+        try {
+            watcher = new WorktreeWatcher(repository);
+        } catch (IOException e) {
+            repository.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the (shared) tracker for the given repository's
+     * work tree. The tracker must be {@link #close() closed} when
+     * no longer used.
+     *
+     * @param repository the repository
+     * @param submodules how submodules are inspected, {@code null}
+     * to use the settings from the repository's configuration
+     * @return the tracker
+     */
+    /* default */ static DirtyFilesTracker forRepository(
+            Repository repository, IgnoreSubmoduleMode submodules) {
+        return trackers.compute(new Key(repository.getWorkTree().toPath()
+            .toAbsolutePath().normalize(), submodules), (key, tracker) -> {
+                try {
+                    var result = tracker == null
+                        ? new DirtyFilesTracker(key, repository)
+                        : tracker;
+                    result.users++;
+                    return result;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+    }
+
+    /**
+     * Returns the work trees with an active tracker.
+     *
+     * @return the work trees
+     */
+    /* default */ static Set<Path> trackedWorkTrees() {
+        return trackers.keySet().stream().map(Key::workTree)
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Releases the tracker. The watcher and the repository are
+     * closed when the tracker has been released by all users.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        var closed = new boolean[1];
+        trackers.computeIfPresent(key, (k, tracker) -> {
+            if (tracker != this || --users > 0) {
+                return tracker;
+            }
+            closed[0] = true;
+            return null;
+        });
+        if (closed[0]) {
+            synchronized (this) {
+                try {
+                    watcher.close();
+                } finally {
+                    repository.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the paths of all uncommitted and optionally all untracked
+     * files, see {@link WorktreeStatus#dirtyPaths()}.
+     *
+     * @param includeUntracked whether to include the untracked files
+     * @return the paths
+     */
+    @SuppressWarnings({ "PMD.AvoidCatchingGenericException",
+        "PMD.PreserveStackTrace" })
+    /* default */ Set<String> dirtyPaths(boolean includeUntracked) {
+        synchronized (this) {
+            var changed = new TreeSet<String>();
+            try {
+                WorktreeWatcher.Changes changes;
+                while ((changes = watcher.collect(Duration.ZERO)) != null) {
+                    rescan |= changes.rescan();
+                    changed.addAll(changes.paths());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Status check interrupted");
+            }
+            try {
+                if (rescan) {
+                    dirty.clear();
+                    untracked.clear();
+                    update(new WorktreeStatus(repository)
+                        .submodules(key.submodules(), false).status());
+                    rescan = false;
+                } else if (!changed.isEmpty()) {
+                    dirty.removeIf(p -> isCovered(changed, p));
+                    untracked.removeIf(p -> isCovered(changed, p));
+                    update(new WorktreeStatus(repository).restrictTo(changed)
+                        .submodules(key.submodules(), false).status());
+                }
+            } catch (RuntimeException e) {
+                // Changes have been consumed, start over next time
+                rescan = true;
+                throw e;
+            }
+            if (!includeUntracked) {
+                return Set.copyOf(dirty);
+            }
+            var result = new TreeSet<>(dirty);
+            result.addAll(untracked);
+            return result;
+        }
+    }
+
+    private void update(WorktreeStatus.Status status) {
+        dirty.addAll(status.uncommitted());
+        untracked.addAll(status.untracked());
+    }
+
+    /**
+     * Checks if the path is one of the changed paths or in one of
+     * the changed directories.
+     *
+     * @param changed the changed paths
+     * @param path the path
+     * @return the result
+     */
+    /* default */ static boolean isCovered(Set<String> changed,
+            String path) {
+        for (var prefix : changed) {
+            if (path.equals(prefix) || path.startsWith(prefix)
+                && path.charAt(prefix.length()) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
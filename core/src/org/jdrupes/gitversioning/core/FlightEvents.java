@@ -0,0 +1,142 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.jdrupes.gitversioning.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events emitted during the evaluation.
+ * The events are disabled by default, enable them with e.g.
+ * {@code jcmd <pid> JFR.start settings=profile} and a setting of
+ * {@code org.jdrupes.gitversioning.*#enabled=true}, or use the
+ * {@code jfr configure} tool to add them to a settings file.
+ *
+ * <p>The usual JFR idiom applies: an event is created and begun
+ * before the measured operation, and its fields are only set if
+ * {@link Event#shouldCommit()} returns {@code true}. If the event
+ * is disabled, the JIT compiler eliminates the event object.
+ */
+@SuppressWarnings("PMD.DataClass")
+final class FlightEvents {
+
+    /** The category of all events. */
+    private static final String CATEGORY = "JDrupes GitVersioning";
+
+    private FlightEvents() {
+    }
+
+    /**
+     * Searching the latest version tag reachable from HEAD.
+     */
+    @Name("org.jdrupes.gitversioning.TagSearch")
+    @Label("Tag Search")
+    @Category(CATEGORY)
+    @Description("Searching the latest version tag reachable from HEAD")
+    @StackTrace(false)
+    /* default */ static class TagSearch extends Event {
+        @Label("HEAD")
+        /* default */ String head;
+        @Label("Tags Considered")
+        @Description("The number of version tags checked for reachability")
+        /* default */ int tagsConsidered;
+        @Label("Tag")
+        /* default */ String tag;
+    }
+
+    /**
+     * Determining the commits reachable from HEAD.
+     */
+    @Name("org.jdrupes.gitversioning.Reachability")
+    @Label("Reachability")
+    @Category(CATEGORY)
+    @Description("Determining the commits reachable from HEAD")
+    @StackTrace(false)
+    /* default */ static class Reachability extends Event {
+        @Label("HEAD")
+        /* default */ String head;
+        @Label("Commits Walked")
+        /* default */ int commitsWalked;
+        @Label("Cached")
+        /* default */ boolean cached;
+    }
+
+    /**
+     * Evaluating the status of the work tree.
+     */
+    @Name("org.jdrupes.gitversioning.Status")
+    @Label("Status")
+    @Category(CATEGORY)
+    @Description("Evaluating the status of the work tree")
+    @StackTrace(false)
+    /* default */ static class Status extends Event {
+        @Label("Work Tree")
+        /* default */ String workTree;
+        @Label("Method")
+        @Description("The method used, one of \"tracker\", \"index\" "
+            + "or \"status\"")
+        /* default */ String method;
+        @Label("Files Stated")
+        @Description("The number of files checked by the index method")
+        /* default */ long filesStated;
+        @Label("Dirty Files")
+        /* default */ long dirtyFiles;
+    }
+
+    /**
+     * Comparing the tree of a commit with the tree of its first parent.
+     */
+    @Name("org.jdrupes.gitversioning.DiffBatch")
+    @Label("Diff Batch")
+    @Category(CATEGORY)
+    @Description("Comparing the tree of a commit with the tree of "
+        + "its first parent")
+    @StackTrace(false)
+    /* default */ static class DiffBatch extends Event {
+        @Label("Commit")
+        /* default */ String commit;
+        @Label("Paths")
+        @Description("The number of changed paths inspected")
+        /* default */ int paths;
+    }
+
+    /**
+     * Deriving the version from the tagged version.
+     */
+    @Name("org.jdrupes.gitversioning.TagProcessing")
+    @Label("Tag Processing")
+    @Category(CATEGORY)
+    @Description("Deriving the version from the tagged version")
+    @StackTrace(false)
+    /* default */ static class TagProcessing extends Event {
+        @Label("Tag")
+        /* default */ String tag;
+        @Label("Tagged Version")
+        /* default */ String taggedVersion;
+        @Label("Version")
+        /* default */ String version;
+        @Label("Concurrent Checks")
+        /* default */ boolean concurrentChecks;
+    }
+}
@@ -21,6 +21,7 @@ package org.jdrupes.gitversioning.core;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.util.Optional;
 
 /**
  * Matches paths against a glob expression.
@@ -30,6 +31,7 @@ import java.nio.file.PathMatcher;
 public class GlobMatcher implements IncludeMatcher {
 
     private final PathMatcher matcher;
+    private final Optional<String> directory;
 
     /**
      * Creates a new glob matcher.
@@ -38,6 +40,7 @@ public class GlobMatcher implements IncludeMatcher {
      */
     public GlobMatcher(String pattern) {
         matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        directory = AntPatternMatcher.literalDirectory(pattern, "*?[{\\");
     }
 
     @Override
@@ -45,4 +48,9 @@ public class GlobMatcher implements IncludeMatcher {
         return matcher.matches(path);
     }
 
+    @Override
+    public Optional<String> directory() {
+        return directory;
+    }
+
 }
@@ -19,6 +19,7 @@
 package org.jdrupes.gitversioning.core;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Matches a file path against a pattern.
@@ -36,4 +37,17 @@ public interface IncludeMatcher {
      * @return {@code true} if the path matches
      */
     boolean matches(Path path);
+
+    /**
+     * Returns the directory that contains all paths matched by this
+     * matcher, if there is one. Used to prune history and status walks
+     * that cannot produce a match. The default implementation returns
+     * an empty result, meaning that any path may match.
+     *
+     * @return the directory (relative to the work tree, without
+     * trailing slash)
+     */
+    default Optional<String> directory() {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,445 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.NotIgnoredFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * A fast check whether a work tree is clean that avoids parsing the
+ * index into a {@link org.eclipse.jgit.dircache.DirCache}.
+ *
+ * <p>The index file is memory-mapped and the recorded stat data
+ * (modification time, size, inode and file type) of the entries in
+ * scope is compared directly with the file system. In addition, the
+ * entries are compared with HEAD (using the index's cache tree if it
+ * is valid) and the work tree is searched for untracked files.
+ *
+ * <p>The check is conservative: it returns {@code true} only if the
+ * work tree is known to be clean. Anything that would require looking
+ * at file contents, such as a stat data mismatch or a racily clean
+ * entry (an entry modified in the same time slot as the index file),
+ * as well as conflicts, submodules and unsupported index versions,
+ * makes the check return {@code false}, in which case the full status
+ * has to be evaluated.
+ */
+final class IndexStatCheck {
+
+    private static final int SIGNATURE = 0x44_49_52_43;
+    private static final int TREE_EXTENSION = 0x54_52_45_45;
+    private static final int HEADER_SIZE = 12;
+    private static final int STAT_SIZE = 40;
+    private static final int ID_SIZE = 20;
+    private static final int FLAGS_OFFSET = STAT_SIZE + ID_SIZE;
+    private static final int ASSUME_VALID = 0x8000;
+    private static final int EXTENDED = 0x4000;
+    private static final int STAGE_MASK = 0x3000;
+    private static final int NAME_MASK = 0xfff;
+    private static final int SKIP_WORKTREE = 0x4000;
+    private static final int INTENT_TO_ADD = 0x2000;
+    private static final int TYPE_MASK = 0170_000;
+
+    private final Repository repository;
+    private final List<byte[]> directories;
+    private final boolean unixView;
+    private boolean checkUntracked = true;
+    private boolean checkSubmodules = true;
+    private int filesStated;
+
+    /**
+     * Creates a new check.
+     *
+     * @param repository the repository
+     * @param directories the directories to check (as raw paths) or
+     * {@code null} to check the complete work tree
+     */
+    /* default */ IndexStatCheck(Repository repository,
+            List<byte[]> directories) {
+        this.repository = repository;
+        this.directories = directories;
+        unixView = repository.getWorkTree().toPath().getFileSystem()
+            .supportedFileAttributeViews().contains("unix");
+    }
+
+    /**
+     * Sets whether untracked files make the work tree dirty.
+     * Defaults to {@code true}.
+     *
+     * @param checkUntracked whether to check for untracked files
+     * @return the index stat check
+     */
+    /* default */ IndexStatCheck checkUntracked(boolean checkUntracked) {
+        this.checkUntracked = checkUntracked;
+        return this;
+    }
+
+    /**
+     * Sets whether the work trees of submodules are to be checked.
+     * As this cannot be done by a stat-only check, a submodule in scope
+     * makes the check fail unless this is set to {@code false}.
+     * Defaults to {@code true}.
+     *
+     * @param checkSubmodules whether to check the submodules
+     * @return the index stat check
+     */
+    /* default */ IndexStatCheck checkSubmodules(boolean checkSubmodules) {
+        this.checkSubmodules = checkSubmodules;
+        return this;
+    }
+
+    /**
+     * Checks whether the work tree is known to be clean.
+     *
+     * @return {@code true} if the work tree is clean, {@code false}
+     * if it is dirty or if the full status must be evaluated
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    /* default */ boolean isClean() {
+        try {
+            return check();
+        } catch (IOException | RuntimeException e) {
+            // Malformed or concurrently modified index, missing file...
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of work tree files whose metadata has been
+     * read by {@link #isClean()}.
+     *
+     * @return the number of files
+     */
+    /* default */ int filesStated() {
+        return filesStated;
+    }
+
+    @SuppressWarnings({ "PMD.CognitiveComplexity", "PMD.NPathComplexity",
+        "PMD.CyclomaticComplexity" })
+    private boolean check() throws IOException {
+        var indexFile = repository.getIndexFile().toPath();
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        var workTree = repository.getWorkTree().toPath();
+        var indexModified = Files.getLastModifiedTime(indexFile);
+        MappedByteBuffer index;
+        try (var channel
+            = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        }
+        int version = index.getInt(4);
+        if (index.getInt(0) != SIGNATURE || version != 2 && version != 3) {
+            return false;
+        }
+
+        // Check stat data of entries in scope and remember their offsets.
+        int count = index.getInt(8);
+        int[] inScope = new int[count];
+        int scoped = 0;
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            int flags = index.getShort(pos + FLAGS_OFFSET) & 0xffff;
+            int extFlags = (flags & EXTENDED) == 0 ? 0
+                : index.getShort(pos + FLAGS_OFFSET + 2) & 0xffff;
+            int pathStart = pos + FLAGS_OFFSET + 2
+                + ((flags & EXTENDED) == 0 ? 0 : 2);
+            int pathLength = pathLength(index, pathStart, flags);
+            int next = pos + (pathStart - pos + pathLength + 8 & ~7);
+            if (inScope(index, pathStart, pathLength)) {
+                if ((flags & STAGE_MASK) != 0
+                    || (extFlags & INTENT_TO_ADD) != 0) {
+                    return false;
+                }
+                if ((flags & ASSUME_VALID) == 0
+                    && (extFlags & SKIP_WORKTREE) == 0
+                    && !statMatches(index, pos, workTree.resolve(
+                        path(index, pathStart, pathLength)),
+                        indexModified)) {
+                    return false;
+                }
+                inScope[scoped++] = pos;
+            }
+            pos = next;
+        }
+
+        return matchesHead(index, pos, inScope, scoped)
+            && !(checkUntracked && hasUntracked(index, inScope, scoped));
+    }
+
+    private static int pathLength(MappedByteBuffer index, int start,
+            int flags) {
+        int length = flags & NAME_MASK;
+        if (length < NAME_MASK) {
+            return length;
+        }
+        while (index.get(start + length) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static String path(MappedByteBuffer index, int start,
+            int length) {
+        var raw = new byte[length];
+        index.get(start, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private boolean inScope(MappedByteBuffer index, int start, int length) {
+        if (directories == null) {
+            return true;
+        }
+        for (var directory : directories) {
+            if (length > directory.length
+                && index.get(start + directory.length) == '/'
+                && regionEquals(index, start, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(MappedByteBuffer index, int start,
+            byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (index.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("PMD.CognitiveComplexity")
+    private boolean statMatches(MappedByteBuffer index, int entry, Path file,
+            FileTime indexModified) throws IOException {
+        int mtimeSeconds = index.getInt(entry + 8);
+        int mtimeNanos = index.getInt(entry + 12);
+        int mode = index.getInt(entry + 24);
+        int size = index.getInt(entry + 36);
+        if ((mode & TYPE_MASK) == FileMode.TYPE_GITLINK) {
+            // Submodule, requires a status of the submodule
+            return !checkSubmodules;
+        }
+
+        // Racily clean entries must be checked by content
+        long indexSeconds = indexModified.toInstant().getEpochSecond();
+        if (Integer.toUnsignedLong(mtimeSeconds) > indexSeconds
+            || Integer.toUnsignedLong(mtimeSeconds) == indexSeconds
+                && mtimeNanos >= indexModified.toInstant().getNano()) {
+            return false;
+        }
+
+        FileTime modified;
+        long length;
+        filesStated++;
+        if (unixView) {
+            Map<String, Object> attrs = Files.readAttributes(file,
+                "unix:lastModifiedTime,size,ino,mode",
+                LinkOption.NOFOLLOW_LINKS);
+            int fileMode = (Integer) attrs.get("mode");
+            long inode = (Long) attrs.get("ino");
+            int indexInode = index.getInt(entry + 20);
+            if ((fileMode & TYPE_MASK) != (mode & TYPE_MASK)
+                || (mode & TYPE_MASK) == FileMode.TYPE_FILE
+                    && (fileMode & 0100) != (mode & 0100)
+                || indexInode != 0 && (int) inode != indexInode) {
+                return false;
+            }
+            modified = (FileTime) attrs.get("lastModifiedTime");
+            length = (Long) attrs.get("size");
+        } else {
+            var attrs = Files.readAttributes(file, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+            modified = attrs.lastModifiedTime();
+            length = attrs.size();
+        }
+        var instant = modified.toInstant();
+        return (int) length == size
+            && (int) instant.getEpochSecond() == mtimeSeconds
+            && (mtimeNanos == 0 || instant.getNano() == mtimeNanos);
+    }
+
+    /**
+     * Checks that the entries in scope match HEAD. Uses the index's
+     * cache tree if it is valid. Else, the entries are compared
+     * with the entries of HEAD's tree.
+     */
+    @SuppressWarnings("PMD.CognitiveComplexity")
+    private boolean matchesHead(MappedByteBuffer index, int extensions,
+            int[] inScope, int scoped) throws IOException {
+        var headId = repository.resolve(Constants.HEAD);
+        if (headId == null) {
+            return scoped == 0;
+        }
+        try (var revWalk = new RevWalk(repository);
+                var treeWalk = new TreeWalk(repository)) {
+            var headTree = revWalk.parseCommit(headId).getTree();
+            if (cacheTreeMatches(index, extensions, headTree)) {
+                return true;
+            }
+            treeWalk.addTree(headTree);
+            treeWalk.setRecursive(true);
+            if (directories != null) {
+                treeWalk.setFilter(PathFilterGroup.createFromStrings(
+                    directories.stream().map(d -> new String(d,
+                        StandardCharsets.UTF_8)).toList()));
+            }
+            var headEntryId = new MutableObjectId();
+            var indexEntryId = new MutableObjectId();
+            var raw = new byte[ID_SIZE];
+            for (int i = 0; i < scoped; i++) {
+                if (!treeWalk.next()) {
+                    return false;
+                }
+                int entry = inScope[i];
+                int flags = index.getShort(entry + FLAGS_OFFSET) & 0xffff;
+                int pathStart = entry + FLAGS_OFFSET + 2
+                    + ((flags & EXTENDED) == 0 ? 0 : 2);
+                var path = treeWalk.getRawPath();
+                if (pathLength(index, pathStart, flags) != path.length
+                    || !regionEquals(index, pathStart, path)
+                    || treeWalk.getRawMode(0) != index.getInt(entry + 24)) {
+                    return false;
+                }
+                treeWalk.getObjectId(headEntryId, 0);
+                index.get(entry + STAT_SIZE, raw);
+                indexEntryId.fromRaw(raw);
+                if (!headEntryId.equals(indexEntryId)) {
+                    return false;
+                }
+            }
+            return !treeWalk.next();
+        }
+    }
+
+    private boolean cacheTreeMatches(MappedByteBuffer index, int extensions,
+            RevTree headTree) {
+        if (directories != null) {
+            return false;
+        }
+        int pos = extensions;
+        while (pos + 8 <= index.limit() - ID_SIZE) {
+            int signature = index.getInt(pos);
+            int size = index.getInt(pos + 4);
+            if (signature != TREE_EXTENSION) {
+                pos += 8 + size;
+                continue;
+            }
+            // Root entry: empty path, NUL, entry count, SP, subtrees, LF
+            int cur = pos + 8;
+            if (index.get(cur++) != 0 || index.get(cur) == '-') {
+                return false;
+            }
+            while (index.get(cur) != '\n') {
+                cur++;
+            }
+            var raw = new byte[ID_SIZE];
+            index.get(cur + 1, raw);
+            return headTree.getId().equals(ObjectId.fromRaw(raw));
+        }
+        return false;
+    }
+
+    /**
+     * Searches the work tree (in scope) for files that are neither
+     * ignored nor in the index.
+     */
+    private boolean hasUntracked(MappedByteBuffer index, int[] inScope,
+            int scoped) throws IOException {
+        try (var treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(new FileTreeIterator(repository));
+            treeWalk.setRecursive(true);
+            TreeFilter filter = new NotIgnoredFilter(0);
+            if (directories != null) {
+                filter = AndTreeFilter.create(filter,
+                    PathFilterGroup.createFromStrings(directories.stream()
+                        .map(d -> new String(d, StandardCharsets.UTF_8))
+                        .toList()));
+            }
+            treeWalk.setFilter(filter);
+            while (treeWalk.next()) {
+                if (!contains(index, inScope, scoped,
+                    treeWalk.getRawPath())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean contains(MappedByteBuffer index, int[] inScope,
+            int scoped, byte[] path) {
+        int low = 0;
+        int high = scoped - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = inScope[mid];
+            int flags = index.getShort(entry + FLAGS_OFFSET) & 0xffff;
+            int pathStart = entry + FLAGS_OFFSET + 2
+                + ((flags & EXTENDED) == 0 ? 0 : 2);
+            int cmp = compare(index, pathStart,
+                pathLength(index, pathStart, flags), path);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(MappedByteBuffer index, int start, int length,
+            byte[] path) {
+        int common = Math.min(length, path.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.toUnsignedInt(index.get(start + i))
+                - Byte.toUnsignedInt(path[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - path.length;
+    }
+}
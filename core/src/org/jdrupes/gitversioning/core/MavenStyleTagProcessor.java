@@ -20,10 +20,16 @@ package org.jdrupes.gitversioning.core;
 
 import com.vdurmont.semver4j.Semver;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.jdrupes.gitversioning.api.TagProcessor;
 import org.jdrupes.gitversioning.api.VersionEvaluator;
@@ -41,12 +47,20 @@ import org.jdrupes.gitversioning.api.VersionEvaluator;
  * is appended (unless the branch matches an ignored pattern), and
  * {@code -SNAPSHOT} is appended. By default, {@code main} and {@code master}
  * are ignored.
+ *
+ * <p>By default, the checks for dirty and modified files are delegated
+ * to {@link VersionEvaluator#anyChange()}, which may order them by
+ * their expected cost. If
+ * {@link #concurrentChecks(boolean) concurrent checks} are enabled,
+ * both checks are started in parallel. The evaluation completes as
+ * soon as one of them finds a file, and the other one is cancelled.
  */
 public class MavenStyleTagProcessor extends TagProcessorBase {
 
     private static final List<Pattern> DEFAULT_PATTERNS
         = List.of(Pattern.compile("main"), Pattern.compile("master"));
     private List<Pattern> ignoredBranches = new ArrayList<>();
+    private boolean concurrentChecks;
 
     /**
      * Creates a processor with default ignored branches ({@code main},
@@ -81,14 +95,42 @@ public class MavenStyleTagProcessor extends TagProcessorBase {
         return this;
     }
 
+    /**
+     * Enables or disables the concurrent evaluation of the checks for
+     * dirty and modified files. The result is the same, but the latency
+     * drops to the maximum of the two checks rather than their sum.
+     *
+     * @param enabled whether to run the checks concurrently
+     * @return this processor for chaining
+     */
+    public MavenStyleTagProcessor concurrentChecks(boolean enabled) {
+        concurrentChecks = enabled;
+        return this;
+    }
+
     @Override
     public String version(VersionEvaluator evaluator, String tagName,
             String version) throws IOException, GitAPIException {
+        var event = new FlightEvents.TagProcessing();
+        event.begin();
+        var result = nextVersion(evaluator, version);
+        if (event.shouldCommit()) {
+            event.tag = tagName;
+            event.taggedVersion = version;
+            event.version = result;
+            event.concurrentChecks = concurrentChecks;
+            event.commit();
+        }
+        return result;
+    }
+
+    private String nextVersion(VersionEvaluator evaluator, String version)
+            throws IOException, GitAPIException {
         if (version.endsWith("-SNAPSHOT")) {
             return version;
         }
-        if (evaluator.dirtyFiles().findAny().isEmpty()
-            && evaluator.modifiedFiles().findAny().isEmpty()) {
+        if (!(concurrentChecks ? anyChangeConcurrently(evaluator)
+            : evaluator.anyChange())) {
             return version;
         }
 
@@ -96,7 +138,7 @@ public class MavenStyleTagProcessor extends TagProcessorBase {
         Semver semver
             = new Semver(version, Semver.SemverType.LOOSE).nextPatch();
         StringBuilder newVersion = new StringBuilder(semver.toString());
-        var branch = evaluator.repository().getBranch();
+        var branch = evaluator.branch();
         if (!ignoredBranches.stream().map(p -> p.matcher(branch).matches())
             .filter(b -> b).findAny().isPresent()) {
             newVersion.append('-')
@@ -105,4 +147,47 @@ public class MavenStyleTagProcessor extends TagProcessorBase {
         newVersion.append("-SNAPSHOT");
         return newVersion.toString();
     }
+
+    /**
+     * Runs both checks in parallel, returning as soon as one of them
+     * reports a file. The remaining check is cancelled by interrupting
+     * its thread.
+     *
+     * @param evaluator the evaluator
+     * @return true, if a dirty or modified file exists
+     */
+    @SuppressWarnings({ "PMD.AvoidCatchingGenericException",
+        "PMD.PreserveStackTrace" })
+    private boolean anyChangeConcurrently(VersionEvaluator evaluator) {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var completion = new ExecutorCompletionService<Boolean>(executor);
+            var checks = List.of(completion.submit(
+                () -> anyFile(evaluator.dirtyFiles())), completion.submit(
+                    () -> anyFile(evaluator.modifiedFiles())));
+            try {
+                for (int i = 0; i < checks.size(); i++) {
+                    if (completion.take().get()) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                checks.forEach(check -> check.cancel(true));
+            }
+        }
+    }
+
+    private static boolean anyFile(Stream<Path> files) {
+        try (files) {
+            return files.findAny().isPresent();
+        }
+    }
 }
@@ -0,0 +1,189 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.lib.Repository;
+import org.jdrupes.gitversioning.api.MetricsListener;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.api.MetricsListener.Phase;
+
+/**
+ * Dispatches metrics to the listeners registered with an evaluator
+ * and to the globally registered listeners. Instances are immutable.
+ * If there are no listeners, all methods return immediately.
+ */
+final class Metrics {
+
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Logger logger
+        = Logger.getLogger(Metrics.class.getName());
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Metrics global = new Metrics(ServiceLoader
+        .load(MetricsListener.class, Metrics.class.getClassLoader()).stream()
+        .map(ServiceLoader.Provider::get).toList());
+    private final List<MetricsListener> listeners;
+
+    private Metrics(List<MetricsListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Returns the instance with the globally registered listeners.
+     *
+     * @return the instance
+     */
+    /* default */ static Metrics global() {
+        return global;
+    }
+
+    /**
+     * Returns a new instance with the given listener added.
+     *
+     * @param listener the listener
+     * @return the instance
+     */
+    /* default */ Metrics with(MetricsListener listener) {
+        var result = new ArrayList<>(listeners);
+        result.add(listener);
+        return new Metrics(List.copyOf(result));
+    }
+
+    /**
+     * Checks if there are any listeners.
+     *
+     * @return the result
+     */
+    /* default */ boolean enabled() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Reports the completion of a phase.
+     *
+     * @param repository the repository
+     * @param phase the phase
+     * @param start the start of the phase as returned by
+     * {@link System#nanoTime()}
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    /* default */ void phase(Repository repository, Phase phase,
+            long start) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        var duration = Duration.ofNanos(System.nanoTime() - start);
+        for (var listener : listeners) {
+            try {
+                listener.phaseCompleted(repository, phase, duration);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, e,
+                    () -> "Metrics listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reports a count. Counts of zero are not reported.
+     *
+     * @param repository the repository
+     * @param counter the counter
+     * @param count the count
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    /* default */ void count(Repository repository, Counter counter,
+            long count) {
+        if (listeners.isEmpty() || count == 0) {
+            return;
+        }
+        for (var listener : listeners) {
+            try {
+                listener.counted(repository, counter, count);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, e,
+                    () -> "Metrics listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that reports the completion of the phase when
+     * it has been consumed or closed, whichever happens first.
+     *
+     * @param <T> the element type
+     * @param repository the repository
+     * @param phase the phase
+     * @param start the start of the phase as returned by
+     * {@link System#nanoTime()}
+     * @param stream the stream
+     * @return the stream
+     */
+    /* default */ <T> Stream<T> timed(Repository repository, Phase phase,
+            long start, Stream<T> stream) {
+        if (listeners.isEmpty()) {
+            return stream;
+        }
+        return whenDone(stream, () -> phase(repository, phase, start));
+    }
+
+    /**
+     * Returns a stream that invokes the action once when it has been
+     * consumed or closed, whichever happens first.
+     *
+     * @param <T> the element type
+     * @param stream the stream
+     * @param onDone the action
+     * @return the stream
+     */
+    /* default */ static <T> Stream<T> whenDone(Stream<T> stream,
+            Runnable onDone) {
+        var done = new AtomicBoolean();
+        Runnable report = () -> {
+            if (done.compareAndSet(false, true)) {
+                onDone.run();
+            }
+        };
+        var source = stream.spliterator();
+        var spliterator = new AbstractSpliterator<T>(
+            source.estimateSize(), source.characteristics()
+                & (Spliterator.ORDERED | Spliterator.NONNULL)) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (source.tryAdvance(action)) {
+                    return true;
+                }
+                report.run();
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(stream::close)
+            .onClose(report);
+    }
+}
@@ -22,12 +22,20 @@ import com.vdurmont.semver4j.Semver;
 import com.vdurmont.semver4j.SemverException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -35,27 +43,48 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators.AbstractSpliterator;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.jdrupes.gitversioning.api.CommitVersion;
+import org.jdrupes.gitversioning.api.Explanation;
+import org.jdrupes.gitversioning.api.Explanation.Candidate;
+import org.jdrupes.gitversioning.api.Explanation.Change;
+import org.jdrupes.gitversioning.api.Explanation.ChangeKind;
+import org.jdrupes.gitversioning.api.Explanation.Outcome;
+import org.jdrupes.gitversioning.api.InterruptibleFuture;
+import org.jdrupes.gitversioning.api.MetricsListener;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.api.MetricsListener.Phase;
 import org.jdrupes.gitversioning.api.TagFilter;
 import org.jdrupes.gitversioning.api.TagProcessor;
+import org.jdrupes.gitversioning.api.UntrackedFiles;
 import org.jdrupes.gitversioning.api.VersionEvaluator;
+import org.jdrupes.gitversioning.core.CheckStatistics.Check;
 
 /**
  * Reference implementation of
@@ -65,22 +94,119 @@ import org.jdrupes.gitversioning.api.VersionEvaluator;
  * configured {@link TagFilter}, then delegates to the configured
  * {@link TagProcessor} to produce the final version string.
  *
- * <p>Uses a {@link ConcurrentHashMap} to cache the set of
- * commits reachable from HEAD, avoiding redundant graph walks.
+ * <p>Caches the sets of commits reachable from the most recently
+ * used heads (of all repositories), avoiding redundant graph walks.
+ * Sets that are truncated by the boundary of a shallow clone
+ * are not cached.
+ *
+ * <p>If the repository has a commit-graph with changed-path Bloom filters
+ * (see {@code git commit-graph write --changed-paths}) and JGit is
+ * configured to use them ({@code core.commitGraph} in the repository's
+ * configuration and {@code commitGraph.readChangedPaths} in JGit's
+ * configuration), the history walk in
+ * {@link #modifiedFiles()} skips the tree diff of all commits whose
+ * filter rules out the directories of the configured matchers.
+ *
+ * <p>Optionally, the paths changed by each commit can be recorded in
+ * a persistent {@link #changedPathsIndex(boolean) index}. The index is
+ * filled incrementally while walking the history and allows subsequent
+ * evaluations (by other evaluators or in later builds) to skip commits
+ * without opening their trees.
+ *
+ * <p>Optionally, {@link #dirtyFiles()} first performs a
+ * {@link #fastCleanCheck(boolean) fast check} based on the stat data
+ * in the index only. Long-running processes can
+ * {@link #trackDirtyFiles(boolean) track} the dirty files instead.
+ * {@link #versionUpdates()} watches the repository and publishes
+ * changes of the version.
+ *
+ * <p>In shallow clones, the walks stop at the commits at the shallow
+ * boundary, which are treated as root commits.
+ * {@link #historyTruncated()} reports if the evaluation has been affected
+ * and a {@link #minimumDepth(int) minimum depth} can be required.
+ *
+ * <p>Evaluators must not be configured and used concurrently.
+ * {@link #freeze()} returns an immutable copy of a configured evaluator
+ * that can be shared by several threads.
+ *
+ * <p>The version can be evaluated {@link #at(String) at any revision}.
+ * The history is then evaluated starting at the revision's commit
+ * instead of HEAD and the work tree is ignored.
+ *
+ * <p>Repositories without a work tree (bare repositories and
+ * repositories that are not stored in the file system, such as JGit's
+ * {@code InMemoryRepository}) are supported. They have no
+ * {@link #dirtyFiles() dirty files}, the version is evaluated from
+ * the history only.
+ *
+ * <p>{@link #history()} evaluates the versions of all commits in a
+ * single pass over the history. {@link #versions(Collection)} does
+ * the same for the merged histories of several revisions, so that
+ * shared ancestry is traversed only once.
+ *
+ * <p>{@link #anyChange()} records the time taken by the checks for
+ * dirty and for modified files per repository and evaluates the
+ * check that has been cheaper so far first.
+ *
+ * <p>The durations of the phases of an evaluation and counts such as
+ * the number of commits walked are reported to
+ * {@link #metricsListener(MetricsListener) metrics listeners}, see
+ * {@link AggregatingMetricsListener} for a default implementation.
+ * Derived classes that replace the JGit based evaluation report the
+ * durations, but only the counts known to this class. In addition,
+ * the tag search, the reachability computation, the status evaluation
+ * and each tree comparison emit Java Flight Recorder events (named
+ * {@code org.jdrupes.gitversioning.*}, disabled by default).
+ *
+ * <p>Derived classes can replace the JGit based evaluation of the
+ * repository's state by overriding {@link #dirtyPaths()},
+ * {@link #tagNames()}, {@link #taggedCommit(String)},
+ * {@link #reachableCommits(ObjectId)} and
+ * {@link #modifiedFiles(ObjectId, ObjectId)}.
  */
 @SuppressWarnings("PMD.CouplingBetweenObjects")
-public class VersionEvaluatorProvider
-        implements org.jdrupes.gitversioning.api.VersionEvaluatorProvider {
+public class VersionEvaluatorProvider implements
+        org.jdrupes.gitversioning.api.VersionEvaluatorProvider, Cloneable,
+        AutoCloseable {
 
     /** Logger for this instance. */
     protected final Logger log = Logger.getLogger(getClass().getName());
-    @SuppressWarnings("PMD.FieldNamingConventions")
+    /** The maximum number of heads with cached reachable commits. */
+    private static final int MAX_CACHED_HEADS = 16;
+    @SuppressWarnings({ "PMD.FieldNamingConventions", "serial" })
     private static final Map<ObjectId, Set<ObjectId>> reachableByHead
-        = new ConcurrentHashMap<>();
+        = Collections.synchronizedMap(
+            new LinkedHashMap<ObjectId, Set<ObjectId>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<ObjectId, Set<ObjectId>> eldest) {
+                    return size() > MAX_CACHED_HEADS;
+                }
+            });
+    /** Long running walks check for interrupts at this interval. */
+    private static final int INTERRUPT_CHECK_INTERVAL = 256;
+    /** Evaluations are repeated at most this often if HEAD moves. */
+    private static final int MAX_EVALUATION_ATTEMPTS = 3;
+    private static final Consumer<Candidate> NO_TRACE = candidate -> {
+    };
     private Repository repository;
-    private final List<IncludeMatcher> matchers = new ArrayList<>();
+    private List<IncludeMatcher> matchers = new ArrayList<>();
     private TagFilter tagFilter = new DefaultTagFilter();
     private TagProcessor tagProcessor = new MavenStyleTagProcessor();
+    private boolean useChangedPathsIndex;
+    private int statusParallelism = 1;
+    private boolean fastCleanCheck;
+    private boolean trackDirtyFiles;
+    private UntrackedFiles untrackedFiles = UntrackedFiles.ALL;
+    private IgnoreSubmoduleMode ignoreSubmodules;
+    private boolean scopedSubmodules;
+    private Duration updatesDebounce = Duration.ofMillis(250);
+    private String revision;
+    private int minimumDepth;
+    private Metrics metrics = Metrics.global();
+    private boolean frozen;
+    private List<byte[]> frozenDirectories;
+    private DirtyFilesTracker tracker;
 
     /**
      * Creates a new evaluator provider with default tag filter and processor.
@@ -91,6 +217,7 @@ public class VersionEvaluatorProvider
 
     @Override
     public VersionEvaluatorProvider repository(Repository repository) {
+        checkMutable();
         this.repository = Objects.requireNonNull(repository);
         return this;
     }
@@ -100,38 +227,318 @@ public class VersionEvaluatorProvider
         return repository;
     }
 
+    /**
+     * Returns a frozen copy of this evaluator. The copy's configuration
+     * cannot be changed, the matched directories are computed once,
+     * and the copy can be shared by threads that evaluate versions
+     * concurrently. The tag filter and the tag processor are shared
+     * with this evaluator and must not be modified any more.
+     *
+     * <p>All methods that change the configuration throw an
+     * {@link IllegalStateException} when invoked on the copy. These
+     * are the methods of the API that return the evaluator for
+     * chaining (such as {@link #repository(Repository)},
+     * {@link #at(String)} or {@link #metricsListener(MetricsListener)})
+     * and {@link #changedPathsIndex(boolean)},
+     * {@link #statusParallelism(int)}, {@link #fastCleanCheck(boolean)},
+     * {@link #trackDirtyFiles(boolean)} and
+     * {@link #versionUpdatesDebounce(Duration)}. Setters of derived
+     * classes must invoke {@link #checkMutable()}. All other methods,
+     * including {@link #explain()}, can be invoked concurrently.
+     *
+     * @return the frozen evaluator
+     */
+    @Override
+    public VersionEvaluator freeze() {
+        if (frozen) {
+            return this;
+        }
+        var result = copy();
+        result.matchers = List.copyOf(matchers);
+        result.frozenDirectories = matchedDirectories();
+        result.frozen = true;
+        return result;
+    }
+
+    /**
+     * Returns a copy of this evaluator with the same configuration.
+     * The default implementation clones the evaluator. Derived classes
+     * must override this method if their state must not be shared
+     * with the copy.
+     *
+     * <p>Besides {@link #freeze()}, {@link #explain()} uses a copy to
+     * record the metrics of its evaluation, also when invoked
+     * concurrently on a frozen evaluator. The method must therefore
+     * be free of side effects on this evaluator.
+     *
+     * @return the copy
+     */
+    protected VersionEvaluatorProvider copy() {
+        try {
+            var result = (VersionEvaluatorProvider) super.clone();
+            result.matchers = new ArrayList<>(matchers);
+            result.tracker = null;
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Clears the cache of reachable commits that is shared by all
+     * instances. Used by tests that measure uncached evaluations.
+     */
+    /* default */ static void clearCaches() {
+        reachableByHead.clear();
+    }
+
+    /**
+     * Returns the number of commits held by the cache of reachable
+     * commits. Used by tests that check the size of the cache.
+     *
+     * @return the number of commits
+     */
+    /* default */ static long reachableCacheSize() {
+        synchronized (reachableByHead) {
+            return reachableByHead.values().stream().mapToLong(Set::size)
+                .sum();
+        }
+    }
+
+    /**
+     * Checks that the evaluator is not {@link #freeze() frozen}.
+     *
+     * @throws IllegalStateException if the evaluator is frozen
+     */
+    protected void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("Evaluator is frozen");
+        }
+    }
+
+    @Override
+    public VersionEvaluator metricsListener(MetricsListener listener) {
+        checkMutable();
+        metrics = metrics.with(Objects.requireNonNull(listener));
+        return this;
+    }
+
+    @Override
+    public VersionEvaluator minimumDepth(int depth) {
+        checkMutable();
+        if (depth < 0) {
+            throw new IllegalArgumentException("Negative depth: " + depth);
+        }
+        minimumDepth = depth;
+        return this;
+    }
+
+    @Override
+    public VersionEvaluator at(String revision) {
+        checkMutable();
+        this.revision = revision;
+        return this;
+    }
+
+    /**
+     * Returns the id of the commit that the version is evaluated for,
+     * i.e. the commit at HEAD or at the configured revision.
+     *
+     * @return the commit's id, {@code null} if HEAD does not refer
+     * to a commit yet
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws IllegalArgumentException if the configured revision
+     * cannot be resolved
+     */
+    private ObjectId headId() throws IOException {
+        if (revision == null) {
+            return repository.resolve(Constants.HEAD);
+        }
+        return resolve(revision);
+    }
+
+    private ObjectId resolve(String revision) throws IOException {
+        var commit = repository.resolve(revision + "^{commit}");
+        if (commit == null) {
+            throw new IllegalArgumentException(
+                "Cannot resolve revision " + revision);
+        }
+        return commit;
+    }
+
+    @Override
+    public String branch() {
+        try {
+            if (revision == null) {
+                return repository.getBranch();
+            }
+            return branch(revision);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String branch(String revision) throws IOException {
+        var ref = repository.findRef(revision);
+        if (ref != null) {
+            var name = ref.getTarget().getName();
+            if (name.startsWith(Constants.R_HEADS)) {
+                return Repository.shortenRefName(name);
+            }
+            if (name.startsWith(Constants.R_REMOTES)) {
+                // Null if there is no configured remote for the ref
+                var branch = repository.shortenRemoteBranchName(name);
+                return branch != null ? branch
+                    : Repository.shortenRefName(name);
+            }
+        }
+        return resolve(revision).name();
+    }
+
     @Override
     public VersionEvaluator tagFilter(TagFilter tagFilter) {
+        checkMutable();
         this.tagFilter = tagFilter;
         return this;
     }
 
     @Override
     public VersionEvaluator tagProcessor(TagProcessor tagProcessor) {
+        checkMutable();
         this.tagProcessor = tagProcessor;
         return this;
     }
 
     @Override
     public VersionEvaluator matchingGlob(String glob) {
+        checkMutable();
         matchers.add(new GlobMatcher(glob));
         return this;
     }
 
     @Override
     public VersionEvaluator matchingRegex(String regex) {
+        checkMutable();
         matchers.add(new RegexMatcher(regex));
         return this;
     }
 
     @Override
     public VersionEvaluator matchingAntPattern(String pattern) {
+        checkMutable();
         matchers.add(new AntPatternMatcher(pattern));
         return this;
     }
 
+    /**
+     * Enables or disables the persistent index of changed paths. The
+     * index is stored in the file {@code gitversioning/changed-paths}
+     * in the repository's directory. It is not used for repositories
+     * without a directory in the file system.
+     *
+     * @param enabled whether to use the index
+     * @return this evaluator for chaining
+     */
+    public VersionEvaluatorProvider changedPathsIndex(boolean enabled) {
+        checkMutable();
+        useChangedPathsIndex = enabled;
+        return this;
+    }
+
+    /**
+     * Returns if the persistent index of changed paths is used.
+     *
+     * @return the result
+     */
+    protected boolean changedPathsIndex() {
+        return useChangedPathsIndex;
+    }
+
+    /**
+     * Sets the number of threads used to determine the dirty files.
+     * If greater than one, the work tree is partitioned by its top-level
+     * directories, which are compared with the index in parallel.
+     * Defaults to 1, i.e. the status is evaluated by JGit's
+     * {@link org.eclipse.jgit.lib.IndexDiff} like
+     * {@link org.eclipse.jgit.api.StatusCommand} does.
+     *
+     * @param parallelism the parallelism
+     * @return this evaluator for chaining
+     */
+    public VersionEvaluatorProvider statusParallelism(int parallelism) {
+        checkMutable();
+        statusParallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Enables a fast check for a clean work tree that is performed
+     * before the full status is evaluated by {@link #dirtyFiles()}.
+     * The check maps the index file into memory and compares the
+     * stat data of the entries with the file system without parsing
+     * the index or hashing any file. If the work tree cannot be
+     * proven to be clean this way, the full status is evaluated.
+     * Disabled by default.
+     *
+     * @param enabled whether to use the fast check
+     * @return this evaluator for chaining
+     */
+    public VersionEvaluatorProvider fastCleanCheck(boolean enabled) {
+        checkMutable();
+        fastCleanCheck = enabled;
+        return this;
+    }
+
+    /**
+     * Enables the tracking of dirty files for long-running processes
+     * that evaluate the version repeatedly. The full status is evaluated
+     * once only. Afterwards, {@link #dirtyFiles()} re-checks only the
+     * paths reported as changed by a {@link java.nio.file.WatchService}.
+     * Changes of the index or of HEAD cause a full re-evaluation. The
+     * tracker is shared by all evaluators for a work tree that
+     * {@link #ignoreSubmodules(IgnoreSubmoduleMode) inspect submodules}
+     * in the same way. It is started when the dirty files are requested
+     * for the first time and is stopped when all evaluators that use
+     * it have been {@link #close() closed}. The tracker is not used
+     * if only {@link #scopedSubmodules(boolean) submodules in scope}
+     * are to be inspected, because the scope differs between
+     * evaluators. Disabled by default.
+     *
+     * @param enabled whether to track dirty files
+     * @return this evaluator for chaining
+     */
+    public VersionEvaluatorProvider trackDirtyFiles(boolean enabled) {
+        checkMutable();
+        trackDirtyFiles = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the debounce interval used by {@link #versionUpdates()}.
+     * The version is re-evaluated when no relevant change has been
+     * reported for this interval. Defaults to 250 ms.
+     *
+     * @param debounce the debounce interval
+     * @return this evaluator for chaining
+     */
+    public VersionEvaluatorProvider
+            versionUpdatesDebounce(Duration debounce) {
+        checkMutable();
+        updatesDebounce = Objects.requireNonNull(debounce);
+        return this;
+    }
+
+    private ChangedPathsIndex openChangedPathsIndex() throws IOException {
+        if (!useChangedPathsIndex || repository.getDirectory() == null) {
+            return null;
+        }
+        return ChangedPathsIndex.forFile(repository.getDirectory().toPath()
+            .resolve("gitversioning").resolve("changed-paths"));
+    }
+
     @Override
     public VersionEvaluator subDirectory(Path subDirectory) {
+        checkMutable();
         var subDir = relativizeDirectory(repository, subDirectory).toString();
         if (subDir.isEmpty()) {
             return this;
@@ -155,6 +562,10 @@ public class VersionEvaluatorProvider
         if (!subDirectory.isAbsolute()) {
             return subDirectory;
         }
+        if (repository.isBare()) {
+            throw new IllegalArgumentException(subDirectory
+                + " cannot be resolved, the repository has no work tree");
+        }
         if (!subDirectory.startsWith(
             repository.getWorkTree().toPath().toAbsolutePath())) {
             throw new IllegalArgumentException(subDirectory
@@ -163,47 +574,285 @@ public class VersionEvaluatorProvider
         return repository.getWorkTree().toPath().relativize(subDirectory);
     }
 
-    private boolean matches(Path path) {
+    /**
+     * Checks if the path (relative to the work tree) matches the
+     * configured file selection.
+     *
+     * @param path the path
+     * @return the result
+     */
+    protected boolean matches(Path path) {
         return matchers.isEmpty()
             || matchers.stream().filter(m -> m.matches(path)).findAny()
                 .isPresent();
     }
 
+    /**
+     * Returns the directories that contain all matched paths as raw
+     * (UTF-8 encoded) paths or {@code null} if any path may match.
+     *
+     * @return the directories
+     */
+    private List<byte[]> matchedDirectories() {
+        if (frozen) {
+            return frozenDirectories;
+        }
+        if (matchers.isEmpty()) {
+            return null;
+        }
+        var result = new ArrayList<byte[]>();
+        for (var matcher : matchers) {
+            var dir = matcher.directory();
+            if (dir.isEmpty()) {
+                return null;
+            }
+            result.add(dir.get().getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the directories (relative to the work tree) that contain
+     * all paths matching the configured file selection.
+     *
+     * @return the directories or {@code null} if any path may match
+     */
+    protected List<String> scopeDirectories() {
+        var directories = matchedDirectories();
+        return directories == null ? null : directories.stream()
+            .map(d -> new String(d, StandardCharsets.UTF_8)).toList();
+    }
+
+    /**
+     * Checks if the commit may have changed any of the given directories.
+     * Returns {@code false} only if the commit's changed-path Bloom
+     * filter rules out all directories. If no filter is available, the
+     * commit has to be diffed.
+     *
+     * @param revWalk the rev walk used to parse the commit
+     * @param commit the commit
+     * @param directories the directories or {@code null}
+     * @return the result
+     */
+    /* default */ static boolean mayHaveChanged(RevWalk revWalk,
+            RevCommit commit, List<byte[]> directories) {
+        if (directories == null) {
+            return true;
+        }
+        var filter = commit.getChangedPathFilter(revWalk);
+        if (filter == null) {
+            return true;
+        }
+        for (var directory : directories) {
+            if (filter.maybeContains(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public VersionEvaluator untrackedFiles(UntrackedFiles mode) {
+        checkMutable();
+        untrackedFiles = Objects.requireNonNull(mode);
+        return this;
+    }
+
+    /**
+     * Returns how untracked files are searched for.
+     *
+     * @return the mode
+     */
+    protected UntrackedFiles untrackedFiles() {
+        return untrackedFiles;
+    }
+
+    @Override
+    public VersionEvaluator ignoreSubmodules(IgnoreSubmoduleMode mode) {
+        checkMutable();
+        if (mode != ignoreSubmodules) {
+            // The tracker evaluates the submodules as configured
+            close();
+        }
+        ignoreSubmodules = mode;
+        return this;
+    }
+
+    /**
+     * Returns which changes of submodules are considered.
+     *
+     * @return the mode, {@code null} if the repository's configuration
+     * applies
+     */
+    protected IgnoreSubmoduleMode ignoreSubmodules() {
+        return ignoreSubmodules;
+    }
+
+    @Override
+    public VersionEvaluator scopedSubmodules(boolean scoped) {
+        checkMutable();
+        scopedSubmodules = scoped;
+        return this;
+    }
+
+    /**
+     * Returns if only submodules in scope are inspected.
+     *
+     * @return the result
+     */
+    protected boolean scopedSubmodules() {
+        return scopedSubmodules;
+    }
+
     @Override
     public Stream<Path> dirtyFiles() {
-        try (Git git = Git.wrap(repository)) {
-            Status status = git.status().call();
-
-            // Uncommitted combines added, changed, removed, missing,
-            // modified and conflicting
-            return Stream.concat(status.getUncommittedChanges().stream(),
-                status.getUntracked().stream()).map(Path::of)
-                .filter(this::matches);
-        } catch (GitAPIException e) {
-            throw new IllegalStateException(e);
+        if (repository.isBare() || revision != null) {
+            return Stream.empty();
+        }
+        var event = new FlightEvents.Status();
+        event.begin();
+        long start = System.nanoTime();
+        if (trackDirtyFiles && !scopedSubmodules) {
+            return recorded(event, "tracker", 0, metrics.timed(repository,
+                Phase.STATUS, start, tracker()
+                    .dirtyPaths(untrackedFiles != UntrackedFiles.NONE)
+                    .stream().sorted().map(Path::of).filter(this::matches)));
+        }
+        long stated = 0;
+        if (fastCleanCheck) {
+            var check = new IndexStatCheck(repository, matchedDirectories())
+                .checkUntracked(untrackedFiles != UntrackedFiles.NONE)
+                .checkSubmodules(ignoreSubmodules != IgnoreSubmoduleMode.ALL);
+            boolean clean = check.isClean();
+            stated = check.filesStated();
+            metrics.count(repository, Counter.FILES_STATED, stated);
+            if (clean) {
+                metrics.phase(repository, Phase.STATUS, start);
+                return recorded(event, "index", stated, Stream.empty());
+            }
+        }
+        return recorded(event, "status", stated, metrics.timed(repository,
+            Phase.STATUS, start,
+            dirtyPaths().map(Path::of).filter(this::matches)));
+    }
+
+    private DirtyFilesTracker tracker() {
+        synchronized (this) {
+            if (tracker == null) {
+                tracker = DirtyFilesTracker.forRepository(repository,
+                    ignoreSubmodules);
+            }
+            return tracker;
+        }
+    }
+
+    /**
+     * Releases the resources used by this evaluator, i.e. the
+     * {@link #trackDirtyFiles(boolean) tracker of dirty files}. The
+     * evaluator can be used again afterwards.
+     */
+    @Override
+    public void close() {
+        DirtyFilesTracker released;
+        synchronized (this) {
+            released = tracker;
+            tracker = null;
+        }
+        if (released != null) {
+            try {
+                released.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that commits the event when it has been
+     * consumed or closed. Returns the given stream if the event
+     * is disabled.
+     */
+    private Stream<Path> recorded(FlightEvents.Status event, String method,
+            long stated, Stream<Path> paths) {
+        if (!event.isEnabled()) {
+            return paths;
+        }
+        var dirty = new long[1];
+        return Metrics.whenDone(paths.peek(p -> dirty[0]++), () -> {
+            if (event.shouldCommit()) {
+                event.workTree = repository.getWorkTree().toString();
+                event.method = method;
+                event.filesStated = stated;
+                event.dirtyFiles = dirty[0];
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Evaluates the status of the work tree and returns the paths
+     * (relative to the work tree) of all uncommitted and untracked files
+     * as configured by {@link #untrackedFiles(UntrackedFiles)},
+     * {@link #ignoreSubmodules(IgnoreSubmoduleMode)} and
+     * {@link #scopedSubmodules(boolean)}. The paths need not be
+     * filtered by the file selection.
+     *
+     * @return the paths
+     */
+    protected Stream<String> dirtyPaths() {
+        var stated = metrics.enabled() ? new LongAdder() : null;
+        var paths = new WorktreeStatus(repository)
+            .parallelism(statusParallelism)
+            .scope(matchedDirectories(), p -> matches(Path.of(p)))
+            .untrackedFiles(untrackedFiles)
+            .submodules(ignoreSubmodules, scopedSubmodules)
+            .statCounter(stated).dirtyPaths();
+        if (stated != null) {
+            metrics.count(repository, Counter.FILES_STATED, stated.sum());
         }
+        return paths;
     }
 
     @Override
     public Stream<Path> modifiedFiles() {
         try {
-            var latest = getLatestVersionTagged();
-            return modifiedFiles(latest.commit());
-        } catch (IOException | GitAPIException e) {
+            var headId = headId();
+            return modifiedSince(headId,
+                getLatestVersionTagged(headId, NO_TRACE).commit());
+        } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
-    @SuppressWarnings({ "PMD.AvoidCatchingGenericException",
-        "PMD.CognitiveComplexity", "PMD.NcssCount" })
-    private Stream<Path> modifiedFiles(RevCommit taggedCommit)
-            throws IOException, GitAPIException {
-        var headId = repository.resolve("HEAD");
-        if (headId == null || taggedCommit == null
-            || taggedCommit.getId().equals(headId)) {
+    private Stream<Path> modifiedSince(ObjectId headId, ObjectId taggedId)
+            throws IOException {
+        if (headId == null || taggedId == null || taggedId.equals(headId)) {
             return Stream.empty();
         }
+        return metrics.timed(repository, Phase.MODIFIED_FILES,
+            System.nanoTime(), modifiedFiles(headId, taggedId));
+    }
 
+    /**
+     * Returns the files that match the file selection and have been
+     * modified by the commits reachable from HEAD, in the order of a
+     * {@link RevWalk} that starts at HEAD, until the tagged commit is
+     * encountered. Each commit is compared with its first parent.
+     * Implementations must throw a {@link CancellationException} when
+     * the invoking thread is interrupted.
+     *
+     * @param headId the id of the commit at HEAD (or at the
+     * {@link #at(String) configured revision})
+     * @param taggedId the id of the tagged commit
+     * @return the stream of paths, must be closed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @SuppressWarnings({ "PMD.AvoidCatchingGenericException",
+        "PMD.CognitiveComplexity", "PMD.NcssCount" })
+    protected Stream<Path> modifiedFiles(ObjectId headId, ObjectId taggedId)
+            throws IOException {
+        @SuppressWarnings("PMD.CloseResource")
+        var index = openChangedPathsIndex();
         @SuppressWarnings("PMD.CloseResource")
         var revWalk = new RevWalk(repository);
         @SuppressWarnings("PMD.CloseResource")
@@ -213,7 +862,10 @@ public class VersionEvaluatorProvider
         try {
             revWalk.markStart(revWalk.parseCommit(headId));
             var commits = revWalk.iterator();
-            var taggedId = taggedCommit.getId();
+            var directories = matchedDirectories();
+            var hashes = directories == null ? null
+                : directories.stream().mapToInt(ChangedPathsIndex::hash)
+                    .toArray();
             var spliterator = new AbstractSpliterator<Path>(
                 Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
                 private Iterator<DiffEntry> diffs = Collections.emptyIterator();
@@ -238,34 +890,99 @@ public class VersionEvaluatorProvider
                         }
 
                         // Lazily advance to the next commit.
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new CancellationException(
+                                "History walk interrupted");
+                        }
                         if (!commits.hasNext()) {
                             finished = true;
                             return false;
                         }
                         var commit = commits.next();
+                        metrics.count(repository, Counter.COMMITS_WALKED, 1);
                         if (commit.getId().equals(taggedId)) {
                             finished = true;
                             return false;
                         }
 
-                        // Next commit, new diffs
-                        diffs = nextDiffs(git, reader, commit);
+                        // Next commit, new diffs (unless ruled out)
+                        if (!mayHaveChanged(revWalk, commit, directories)
+                            || Boolean.FALSE.equals(indexed(commit))) {
+                            continue;
+                        }
+                        var entries = nextDiffs(git, reader, commit);
+                        if (index != null && commit.getParentCount() > 0) {
+                            record(index, commit, entries);
+                        }
+                        diffs = entries.iterator();
                     }
                     return false;
                 }
 
-                private Iterator<DiffEntry> nextDiffs(Git git,
+                /**
+                 * Looks up the commit in the changed paths index.
+                 */
+                @SuppressWarnings("PMD.AvoidReturningNull")
+                private Boolean indexed(RevCommit commit) {
+                    if (index == null || hashes == null) {
+                        return null;
+                    }
+                    var result = index.mayHaveChanged(commit, hashes);
+                    metrics.count(repository, result == null
+                        ? Counter.CACHE_MISSES : Counter.CACHE_HITS, 1);
+                    return result;
+                }
+
+                private void record(ChangedPathsIndex index,
+                        RevCommit commit, List<DiffEntry> entries) {
+                    if (index.contains(commit)) {
+                        return;
+                    }
+                    var paths = new ArrayList<String>();
+                    for (var entry : entries) {
+                        if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                            paths.add(entry.getOldPath());
+                        }
+                        if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                            paths.add(entry.getNewPath());
+                        }
+                    }
+                    try {
+                        index.record(commit, paths);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(
+                            "Unable to update changed paths index", e);
+                    }
+                }
+
+                private List<DiffEntry> nextDiffs(Git git,
                         ObjectReader reader,
                         RevCommit commit) {
+                    metrics.count(repository, Counter.TREES_DIFFED, 1);
+                    var event = new FlightEvents.DiffBatch();
+                    event.begin();
                     try {
-                        var oldTreeParser = new CanonicalTreeParser();
-                        oldTreeParser.reset(reader,
-                            commit.getParent(0).getTree().getId());
+                        // Root commits and the commits at the boundary
+                        // of a shallow clone have no (known) parent
+                        AbstractTreeIterator oldTreeParser
+                            = new EmptyTreeIterator();
+                        if (commit.getParentCount() > 0) {
+                            var parentParser = new CanonicalTreeParser();
+                            parentParser.reset(reader,
+                                commit.getParent(0).getTree().getId());
+                            oldTreeParser = parentParser;
+                        }
                         var newTreeParser = new CanonicalTreeParser();
                         newTreeParser.reset(reader,
                             commit.getTree().getId());
-                        return git.diff().setNewTree(newTreeParser)
-                            .setOldTree(oldTreeParser).call().iterator();
+                        var entries = git.diff().setNewTree(newTreeParser)
+                            .setOldTree(oldTreeParser).call();
+                        if (event.shouldCommit()) {
+                            event.commit = commit.getName();
+                            event.paths = entries.size();
+                            event.commit();
+                        }
+                        return entries;
                     } catch (GitAPIException e) {
                         throw new UncheckedIOException(new IOException(
                             "Unable to calculate Git diff", e));
@@ -281,104 +998,628 @@ public class VersionEvaluatorProvider
                     reader.close();
                     git.close();
                     revWalk.close();
+                    close(index);
                 });
 
-        } catch (RuntimeException | Error e) {
+        } catch (IOException | RuntimeException | Error e) {
             reader.close();
             git.close();
             revWalk.close();
+            try {
+                close(index);
+            } catch (UncheckedIOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
             throw e;
         }
     }
 
+    private static void close(ChangedPathsIndex index) {
+        if (index == null) {
+            return;
+        }
+        try {
+            index.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Flow.Publisher<String> versionUpdates() {
+        if (repository.getDirectory() == null) {
+            throw new UnsupportedOperationException(
+                "Version updates require a repository in the file system");
+        }
+        return new VersionPublisher(this, repository, this::mayAffectVersion,
+            updatesDebounce);
+    }
+
+    /**
+     * Checks if a change of the given path (relative to the work tree)
+     * may affect the version.
+     *
+     * @param path the path
+     * @return the result
+     */
+    private boolean mayAffectVersion(String path) {
+        if (matchers.isEmpty() || matches(Path.of(path))) {
+            return true;
+        }
+        var directories = matchedDirectories();
+        if (directories == null) {
+            // May be a (deleted) directory with matching files
+            return !Files.isRegularFile(repository.getWorkTree().toPath()
+                .resolve(path));
+        }
+        var raw = path.getBytes(StandardCharsets.UTF_8);
+        for (var directory : directories) {
+            int common = Math.min(raw.length, directory.length);
+            if (Arrays.equals(raw, 0, common, directory, 0, common)
+                && (raw.length == directory.length
+                    || raw[common] == '/' || directory[common] == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean anyChange() {
+        var statistics = CheckStatistics.forRepository(repository);
+        for (var check : statistics.cheapestFirst()) {
+            long start = System.nanoTime();
+            boolean found;
+            try (var files = check == Check.DIRTY_FILES ? dirtyFiles()
+                : modifiedFiles()) {
+                found = files.findAny().isPresent();
+            }
+            statistics.record(check, System.nanoTime() - start);
+            if (found) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the version. The files modified are those since the
+     * tag found by the tag search, even if tags are created during
+     * the evaluation. The check for dirty files resolves HEAD on its
+     * own, however. If HEAD is moved during the evaluation (e.g. by
+     * a commit), the result may be a version that never existed.
+     * The version is therefore evaluated again if HEAD has moved.
+     */
     @Override
     public String version() {
         try {
-            var latest = getLatestVersionTagged();
-            return tagProcessor.version(this, latest.tag(),
+            var head = headId();
+            for (int attempt = 1;; attempt++) {
+                var latest = getLatestVersionTagged(head, NO_TRACE);
+                var version
+                    = new Prechecked(this, head, latest).version();
+                var current = headId();
+                if (Objects.equals(head, current)
+                    || attempt == MAX_EVALUATION_ATTEMPTS) {
+                    return version;
+                }
+                head = current;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String version(VersionEvaluator evaluator,
+            VersionedCommit latest) {
+        try {
+            return tagProcessor.version(evaluator, latest.tag(),
                 latest.version().toString());
         } catch (IOException | GitAPIException e) {
             throw new IllegalStateException(e);
         }
     }
 
-    private record VersionedTag(Ref ref, String tag, Semver version) {
+    /**
+     * Searches for the version tag and checks for dirty files
+     * concurrently. When both have completed, the tag processor is
+     * invoked. It sees the result of the check for dirty files and
+     * checks for modified files only if there are no dirty files.
+     * The check for dirty files is done speculatively, i.e. even if
+     * the tag processor turns out not to need it.
+     */
+    @Override
+    public CompletableFuture<String> versionAsync(Executor executor) {
+        var result = new CompletableFuture<String>();
+        var tagSearch = InterruptibleFuture.supplyAsync(() -> {
+            try {
+                var head = headId();
+                return new Prechecked(this, head,
+                    getLatestVersionTagged(head, NO_TRACE));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, executor);
+        var dirty = InterruptibleFuture.supplyAsync(() -> {
+            try (var files = dirtyFiles()) {
+                return files.findFirst();
+            }
+        }, executor);
+        tagSearch.thenCombine(dirty, (searched, firstDirty) -> {
+            var processing = InterruptibleFuture.supplyAsync(
+                () -> searched.dirty(firstDirty.orElse(null)).version(),
+                executor);
+            processing.whenComplete((version, thrown) -> {
+                if (thrown == null) {
+                    result.complete(version);
+                } else {
+                    result.completeExceptionally(thrown);
+                }
+            });
+            result.whenComplete((version, thrown) -> processing.cancel(true));
+            return null;
+        }).exceptionally(thrown -> {
+            result.completeExceptionally(thrown instanceof CompletionException
+                && thrown.getCause() != null ? thrown.getCause() : thrown);
+            return null;
+        });
+        result.whenComplete((version, thrown) -> {
+            tagSearch.cancel(true);
+            dirty.cancel(true);
+        });
+        return result;
     }
 
-    private record VersionedCommit(RevCommit commit, String tag,
-            Semver version) {
+    /**
+     * The evaluator passed to the tag processor. It reports the files
+     * modified since the tag already found by the tag search and,
+     * if known, the result of the check for dirty files. The first
+     * file obtained from the streams by the tag processor is recorded
+     * as the change that decided the version.
+     */
+    private static final class Prechecked extends VersionEvaluatorProvider {
+        private final VersionEvaluatorProvider evaluator;
+        private final ObjectId head;
+        private final VersionedCommit latest;
+        private final boolean prechecked;
+        private final Path firstDirty;
+        private final AtomicReference<Change> change
+            = new AtomicReference<>();
+
+        private Prechecked(VersionEvaluatorProvider evaluator, ObjectId head,
+                VersionedCommit latest) {
+            this(evaluator, head, latest, false, null);
+        }
+
+        private Prechecked(VersionEvaluatorProvider evaluator, ObjectId head,
+                VersionedCommit latest, boolean prechecked, Path firstDirty) {
+            this.evaluator = evaluator;
+            this.head = head;
+            this.latest = latest;
+            this.prechecked = prechecked;
+            this.firstDirty = firstDirty;
+            repository(evaluator.repository());
+        }
+
+        /**
+         * Returns an evaluator with the result of the check for dirty
+         * files.
+         *
+         * @param firstDirty the first dirty file, {@code null} if
+         * there is none
+         * @return the evaluator
+         */
+        private Prechecked dirty(Path firstDirty) {
+            return new Prechecked(evaluator, head, latest, true, firstDirty);
+        }
+
+        @Override
+        public String branch() {
+            return evaluator.branch();
+        }
+
+        /**
+         * Returns the first file obtained from the streams.
+         *
+         * @return the change, {@code null} if no file has been obtained
+         */
+        private Change change() {
+            return change.get();
+        }
+
+        private Stream<Path> recorded(Stream<Path> paths, ChangeKind kind) {
+            return paths.peek(path -> {
+                if (change.get() == null) {
+                    change.compareAndSet(null, new Change(kind, path));
+                }
+            });
+        }
+
+        /**
+         * Returns the dirty files. If the check has been done already,
+         * the result is used. The files after the first one are then
+         * evaluated only if the stream is consumed beyond the first.
+         */
+        @Override
+        public Stream<Path> dirtyFiles() {
+            if (!prechecked) {
+                return recorded(evaluator.dirtyFiles(), ChangeKind.DIRTY);
+            }
+            if (firstDirty == null) {
+                return Stream.empty();
+            }
+            Supplier<Stream<Path>> remaining = () -> evaluator.dirtyFiles()
+                .filter(path -> !path.equals(firstDirty));
+            return recorded(Stream.concat(Stream.of(firstDirty),
+                Stream.of(remaining).flatMap(Supplier::get)),
+                ChangeKind.DIRTY);
+        }
+
+        @Override
+        public Stream<Path> modifiedFiles() {
+            try {
+                return recorded(evaluator.modifiedSince(head, latest.commit()),
+                    ChangeKind.MODIFIED);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean anyChange() {
+            if (!prechecked) {
+                return super.anyChange();
+            }
+            try (var files = firstDirty == null ? modifiedFiles()
+                : dirtyFiles()) {
+                return files.findAny().isPresent();
+            }
+        }
+
+        @Override
+        public String version() {
+            return evaluator.version(this, latest);
+        }
     }
 
-    private VersionedCommit getLatestVersionTagged()
-            throws GitAPIException, IOException {
-        try (var git = Git.wrap(repository);
-                var revWalk = new RevWalk(repository)) {
-            var reachable = reachableCommits();
-            return git.tagList().call().stream()
-                .mapMulti((Ref ref, Consumer<
-                        VersionedTag> consumer) -> addVersionInfo(ref)
-                            .ifPresent(consumer))
-                .sorted(new Comparator<VersionedTag>() {
-                    @Override
-                    public int compare(VersionedTag obj1, VersionedTag obj2) {
-                        return obj2.version().compareTo(obj1.version());
-                    }
-                }).mapMulti((VersionedTag vt,
-                        Consumer<VersionedCommit> consumer) -> findCommit(
-                            revWalk, vt.ref()).ifPresent(
-                                c -> consumer.accept(new VersionedCommit(
-                                    c, vt.tag(), vt.version()))))
-                .filter(vc -> reachable.contains(vc.commit().getId()))
-                .findFirst().orElseGet(
-                    () -> new VersionedCommit(null, null, new Semver("0.0.0")));
+    @Override
+    public Explanation explain() {
+        // Record the metrics using a copy, this evaluator may be shared
+        var recorder = new AggregatingMetricsListener();
+        var recording = copy();
+        recording.metrics = metrics.with(recorder);
+        return recording.explain(recorder);
+    }
+
+    private Explanation explain(AggregatingMetricsListener recorder) {
+        try {
+            var head = headId();
+            var candidates = new ArrayList<Candidate>();
+            String version = null;
+            String failure = null;
+            Change change = null;
+            try {
+                var latest = getLatestVersionTagged(head, candidates::add);
+                var evaluation = new Prechecked(this, head, latest);
+                version = evaluation.version();
+                change = evaluation.change();
+            } catch (IllegalArgumentException e) {
+                failure = e.getMessage();
+            }
+            var durations = new EnumMap<Phase, Duration>(Phase.class);
+            for (var phase : Phase.values()) {
+                var histogram = recorder.histogram(phase);
+                if (histogram.count() > 0) {
+                    durations.put(phase, histogram.total());
+                }
+            }
+            var counts = new EnumMap<Counter, Long>(Counter.class);
+            for (var counter : Counter.values()) {
+                if (recorder.count(counter) > 0) {
+                    counts.put(counter, recorder.count(counter));
+                }
+            }
+            return new Explanation(head, candidates, version, change,
+                head != null && historyTruncated(), durations, counts,
+                failure);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    private Optional<RevCommit> findCommit(RevWalk revWalk, Ref ref) {
+    @Override
+    public Stream<CommitVersion> history() {
         try {
+            var headId = headId();
+            if (headId == null) {
+                return Stream.empty();
+            }
+            return metrics.timed(repository, Phase.HISTORY, System.nanoTime(),
+                versionHistory().versions(headId, branch()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> versions(Collection<String> revisions) {
+        try {
+            var tips = new LinkedHashMap<String, ObjectId>();
+            var branches = new HashMap<String, String>();
+            for (var rev : revisions) {
+                tips.put(rev, resolve(rev));
+                branches.put(rev, branch(rev));
+            }
+            long start = System.nanoTime();
+            var result = versionHistory().versions(tips, branches);
+            metrics.phase(repository, Phase.HISTORY, start);
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private VersionHistory versionHistory() throws IOException {
+        var tags = new HashMap<ObjectId, VersionHistory.Tag>();
+        var commits = versionedCommits(NO_TRACE).toList();
+        for (int rank = 0; rank < commits.size(); rank++) {
+            var commit = commits.get(rank);
+            tags.putIfAbsent(commit.commit(), new VersionHistory.Tag(rank,
+                commit.tag(), commit.version().toString(), commit.commit()));
+        }
+        return new VersionHistory(repository, tags, matchedDirectories(),
+            this::matches, tagProcessor, metrics);
+    }
+
+    private record VersionedTag(String tag, Semver version) {
+    }
+
+    private record VersionedCommit(ObjectId commit, String tag,
+            Semver version) {
+    }
+
+    /**
+     * Returns the latest version tag reachable from the given commit.
+     * The tags considered are reported to the given consumer.
+     */
+    private VersionedCommit getLatestVersionTagged(ObjectId headId,
+            Consumer<Candidate> trace) throws IOException {
+        var event = new FlightEvents.TagSearch();
+        event.begin();
+        var reachable = cachedReachableCommits(headId);
+        var considered = new int[1];
+        var latest = versionedCommits(trace).filter(vc -> {
+            if (++considered[0] % INTERRUPT_CHECK_INTERVAL == 0
+                && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Tag search interrupted");
+            }
+            var found = reachable.contains(vc.commit());
+            trace.accept(new Candidate(vc.tag(),
+                vc.version().toString(), vc.commit().copy(),
+                found ? Outcome.SELECTED : Outcome.UNREACHABLE));
+            return found;
+        }).findFirst().orElseGet(
+            () -> new VersionedCommit(null, null, new Semver("0.0.0")));
+        if (event.shouldCommit()) {
+            event.head = name(headId);
+            event.tagsConsidered = considered[0];
+            event.tag = latest.tag();
+            event.commit();
+        }
+        return latest;
+    }
+
+    private static String name(ObjectId id) {
+        return id == null ? null : id.getName();
+    }
+
+    /**
+     * Returns the tagged commits, sorted by descending version. The
+     * tagged commits are resolved lazily. Tags that are rejected
+     * are reported to the given consumer.
+     */
+    private Stream<VersionedCommit> versionedCommits(
+            Consumer<Candidate> trace) throws IOException {
+        long start = System.nanoTime();
+        var names = tagNames();
+        var versioned = names.stream()
+            .mapMulti((String tag, Consumer<
+                    VersionedTag> consumer) -> addVersionInfo(tag, trace)
+                        .ifPresent(consumer))
+            .sorted(new Comparator<VersionedTag>() {
+                @Override
+                public int compare(VersionedTag obj1, VersionedTag obj2) {
+                    return obj2.version().compareTo(obj1.version());
+                }
+            }).toList();
+        metrics.count(repository, Counter.TAGS_LISTED, names.size());
+        metrics.count(repository, Counter.TAGS_PARSED, versioned.size());
+        metrics.phase(repository, Phase.TAG_LISTING, start);
+        return versioned.stream().mapMulti((VersionedTag vt,
+                Consumer<VersionedCommit> consumer) -> taggedCommit(vt.tag())
+                    .ifPresentOrElse(c -> consumer.accept(
+                        new VersionedCommit(c, vt.tag(), vt.version())),
+                        () -> trace.accept(new Candidate(vt.tag(),
+                            vt.version().toString(), null,
+                            Outcome.UNREACHABLE))));
+    }
+
+    /**
+     * Returns the names of all tags (without {@code refs/tags/}).
+     *
+     * @return the tag names
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected List<String> tagNames() throws IOException {
+        try (var git = Git.wrap(repository)) {
+            return git.tagList().call().stream().map(
+                ref -> ref.getName().substring(Constants.R_TAGS.length()))
+                .toList();
+        } catch (GitAPIException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns the commit that the tag with the given name refers to,
+     * either directly or through an annotated tag.
+     *
+     * @param tag the tag name (without {@code refs/tags/})
+     * @return the commit's id or empty if the tag does not exist or
+     * does not refer to a commit
+     */
+    protected Optional<ObjectId> taggedCommit(String tag) {
+        try (var revWalk = new RevWalk(repository)) {
+            var ref = repository.exactRef(Constants.R_TAGS + tag);
+            if (ref == null) {
+                return Optional.empty();
+            }
             RevObject refd = revWalk.parseAny(ref.getObjectId());
-            revWalk.reset();
             return switch (refd) {
             case RevTag revtag -> Optional
-                .of(revWalk.parseCommit(revtag.getObject()));
-            case RevCommit revcommit -> Optional.of(revcommit);
+                .of(revWalk.parseCommit(revtag.getObject()).getId());
+            case RevCommit revcommit -> Optional.of(revcommit.getId());
             default -> Optional.empty();
             };
         } catch (IOException e) {
             return Optional.empty();
-        } finally {
-            revWalk.reset();
         }
     }
 
     private Set<ObjectId> reachableCommits() throws IOException {
-        ObjectId headId = repository.resolve("HEAD");
+        return cachedReachableCommits(headId());
+    }
+
+    private Set<ObjectId> cachedReachableCommits(ObjectId headId)
+            throws IOException {
         if (headId == null) {
             // No commits yet
             return Collections.emptySet();
         }
-        return reachableByHead.computeIfAbsent(
-            headId, k -> {
-                try (var revWalk = new RevWalk(repository)) {
-                    var reachable = new HashSet<ObjectId>();
-                    revWalk.markStart(revWalk.parseCommit(headId));
-                    for (RevCommit commit : revWalk) {
-                        reachable.add(commit.getId());
-                    }
-                    return reachable;
-                } catch (IOException e) {
-                    return Collections.emptySet();
+        var event = new FlightEvents.Reachability();
+        event.begin();
+        var cached = reachableByHead.get(headId);
+        if (cached != null) {
+            metrics.count(repository, Counter.CACHE_HITS, 1);
+            if (event.shouldCommit()) {
+                event.head = headId.getName();
+                event.cached = true;
+                event.commit();
+            }
+            return cached;
+        }
+        metrics.count(repository, Counter.CACHE_MISSES, 1);
+        long start = System.nanoTime();
+        var reachable = reachableCommits(headId);
+        metrics.count(repository, Counter.COMMITS_WALKED, reachable.size());
+        metrics.phase(repository, Phase.REACHABILITY, start);
+        if (event.shouldCommit()) {
+            event.head = headId.getName();
+            event.commitsWalked = reachable.size();
+            event.commit();
+        }
+        if (truncated(reachable)) {
+            // Must be re-evaluated when the clone is deepened. Never
+            // published, else other evaluators would skip the check.
+            checkDepth(headId);
+            return reachable;
+        }
+        var previous = reachableByHead.putIfAbsent(headId, reachable);
+        return previous == null ? reachable : previous;
+    }
+
+    @Override
+    public boolean historyTruncated() {
+        try {
+            return truncated(reachableCommits());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks if any of the reachable commits is at the boundary of
+     * a shallow clone. The shallow commits are read from
+     * {@code .git/shallow} (and cached by JGit until the file changes).
+     * A {@link RevWalk} treats them as commits without parents.
+     */
+    private boolean truncated(Set<ObjectId> reachable) throws IOException {
+        for (var shallow : repository.getObjectDatabase()
+            .getShallowCommits()) {
+            if (reachable.contains(shallow)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the {@link #minimumDepth(int) minimum depth} requirement
+     * by following the first parents until the shallow boundary
+     * or the required depth is reached.
+     */
+    private void checkDepth(ObjectId headId) throws IOException {
+        if (minimumDepth == 0) {
+            return;
+        }
+        var shallow = repository.getObjectDatabase().getShallowCommits();
+        try (var revWalk = new RevWalk(repository)) {
+            var commit = revWalk.parseCommit(headId);
+            for (int depth = 1; depth < minimumDepth; depth++) {
+                if (shallow.contains(commit)) {
+                    throw new IllegalStateException("History of shallow "
+                        + "clone has a depth of " + depth + ", at least "
+                        + minimumDepth + " required, deepen with"
+                        + " \"git fetch --deepen\"");
                 }
-            });
+                if (commit.getParentCount() == 0) {
+                    return;
+                }
+                commit = revWalk.parseCommit(commit.getParent(0));
+            }
+        }
     }
 
-    private Optional<VersionedTag> addVersionInfo(Ref ref) {
-        var tag = ref.getName().substring("refs/tags/".length());
-        return tagFilter.version(tag).map(v -> {
+    /**
+     * Returns the ids of all commits reachable from the given commit
+     * (including the commit itself). The result is cached by the caller.
+     *
+     * @param headId the id of the commit at HEAD (or at the
+     * {@link #at(String) configured revision})
+     * @return the ids, empty if the commits cannot be determined
+     */
+    protected Set<ObjectId> reachableCommits(ObjectId headId) {
+        try (var revWalk = new RevWalk(repository)) {
+            var reachable = new HashSet<ObjectId>();
+            revWalk.markStart(revWalk.parseCommit(headId));
+            for (RevCommit commit : revWalk) {
+                if (reachable.size() % INTERRUPT_CHECK_INTERVAL
+                    == INTERRUPT_CHECK_INTERVAL - 1
+                    && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException(
+                        "Reachability walk interrupted");
+                }
+                reachable.add(commit.getId());
+            }
+            return reachable;
+        } catch (IOException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    private Optional<VersionedTag> addVersionInfo(String tag,
+            Consumer<Candidate> trace) {
+        var extracted = tagFilter.version(tag);
+        if (extracted.isEmpty()) {
+            trace.accept(new Candidate(tag, null, null, Outcome.FILTERED));
+        }
+        return extracted.map(v -> {
             try {
                 var version = new Semver(v, Semver.SemverType.LOOSE);
-                return new VersionedTag(ref, tag, version);
+                return new VersionedTag(tag, version);
             } catch (SemverException e) {
+                trace.accept(
+                    new Candidate(tag, v, null, Outcome.UNPARSABLE));
                 throw new IllegalArgumentException(
                     "Failed to parse version: " + v, e);
             }
@@ -0,0 +1,450 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jdrupes.gitversioning.api.CommitVersion;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.api.TagProcessor;
+
+/**
+ * Evaluates the versions of all commits reachable from one or more
+ * start commits in a single pass.
+ *
+ * <p>The commits are processed in topological order, parents before
+ * their children. The state of a commit is derived from the state of
+ * its parents: the latest version tag is the one with the highest
+ * version among the commit's own tags and the parents' latest tags.
+ * A commit has been modified since this tag if any commit reachable
+ * from it, but not from the tagged commit, changes a matching file
+ * (compared with its first parent). This is known from a parent with
+ * the same latest tag and from the commit's own changes. For a parent
+ * with another (lower) latest tag, the commits reachable from the
+ * parent but not from the tagged commit are walked. These are usually
+ * only the few commits of a merged branch.
+ *
+ * <p>The state of a commit is dropped as soon as all its children have
+ * been processed. Apart from the commits themselves (which are kept
+ * by the {@link RevWalk} for the topological sort), the memory used
+ * is therefore bounded by the width of the history. The versions are
+ * evaluated while the commits are taken from the walk, i.e. no list
+ * of all commits is built.
+ */
+final class VersionHistory {
+
+    private final Repository repository;
+    private final Map<ObjectId, Tag> tags;
+    private final List<byte[]> directories;
+    private final Predicate<Path> matches;
+    private final Metrics metrics;
+    private final CommitView view;
+
+    /**
+     * A version tag.
+     *
+     * @param rank the rank of the tag in the list of all version tags,
+     * sorted by descending version
+     * @param name the tag's name
+     * @param version the tag's version
+     * @param commit the tagged commit
+     */
+    /* default */ record Tag(int rank, String name, String version,
+            ObjectId commit) {
+    }
+
+    /**
+     * The state of a processed commit.
+     *
+     * @param tag the latest version tag, {@code null} if there is none
+     * @param change a matching file modified since the tag,
+     * {@code null} if there is none
+     */
+    private record State(Tag tag, Path change) {
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param repository the repository
+     * @param tags the best ranked version tag of each tagged commit
+     * @param directories the directories that contain all matched paths,
+     * {@code null} if any path may match
+     * @param matches the file selection
+     * @param processor the tag processor
+     * @param metrics the metrics
+     */
+    /* default */ VersionHistory(Repository repository,
+            Map<ObjectId, Tag> tags, List<byte[]> directories,
+            Predicate<Path> matches, TagProcessor processor,
+            Metrics metrics) {
+        this.repository = repository;
+        this.tags = tags;
+        this.directories = directories;
+        this.matches = matches;
+        this.metrics = metrics;
+        view = new CommitView(repository, processor);
+    }
+
+    /**
+     * Returns the versions of all commits reachable from the start
+     * commit, parents before their children.
+     *
+     * @param start the start commit
+     * @param branch the branch that the versions are evaluated for
+     * @return the versions, the stream must be closed
+     */
+    @SuppressWarnings("PMD.CloseResource")
+    /* default */ Stream<CommitVersion> versions(ObjectId start,
+            String branch) {
+        var reader = repository.newObjectReader();
+        var walk = new HistoryWalk(reader);
+        var spliterator = new AbstractSpliterator<CommitVersion>(
+            Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean prepared;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super CommitVersion> action) {
+                try {
+                    if (!prepared) {
+                        prepare(walk, List.of(start));
+                        prepared = true;
+                    }
+                    var commit = (HistoryCommit) walk.next();
+                    if (commit == null) {
+                        return false;
+                    }
+                    checkInterrupted();
+                    var state = process(walk, reader, commit);
+                    action.accept(new CommitVersion(commit.copy(),
+                        version(state, branch)));
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            walk.close();
+            reader.close();
+        });
+    }
+
+    /**
+     * Returns the versions of the given commits. The commits are
+     * evaluated in a single pass over their merged histories, which
+     * ends as soon as the versions of all given commits are known.
+     *
+     * @param tips the commits, mapped to the names used in the result
+     * @param branches the branches that the versions are evaluated for,
+     * mapped to the names of the commits
+     * @return the versions, mapped to the names of the commits, in the
+     * order of the tips
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    /* default */ Map<String, String> versions(Map<String, ObjectId> tips,
+            Map<String, String> branches) throws IOException {
+        var result = new LinkedHashMap<String, String>();
+        var names = new HashMap<ObjectId, List<String>>();
+        for (var tip : tips.entrySet()) {
+            result.put(tip.getKey(), null);
+            names.computeIfAbsent(tip.getValue(), k -> new ArrayList<>())
+                .add(tip.getKey());
+        }
+        try (var reader = repository.newObjectReader();
+                var walk = new HistoryWalk(reader)) {
+            prepare(walk, names.keySet());
+            int pending = names.size();
+            while (pending > 0) {
+                var commit = (HistoryCommit) walk.next();
+                if (commit == null) {
+                    break;
+                }
+                checkInterrupted();
+                var state = process(walk, reader, commit);
+                var resolved = names.get(commit);
+                if (resolved == null) {
+                    continue;
+                }
+                pending--;
+                for (var name : resolved) {
+                    result.put(name, version(state, branches.get(name)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("History walk interrupted");
+        }
+    }
+
+    /**
+     * Counts the children of each commit and prepares the walk to
+     * return the commits in topological order, parents before their
+     * children. The children are counted in a first pass without
+     * sorting. The second pass uses the commits already parsed
+     * (which are kept by {@link RevWalk#reset()}).
+     */
+    private void prepare(HistoryWalk walk, Collection<ObjectId> starts)
+            throws IOException {
+        markStarts(walk, starts);
+        long count = 0;
+        for (RevCommit commit : walk) {
+            count++;
+            for (var parent : commit.getParents()) {
+                ((HistoryCommit) parent).children++;
+            }
+        }
+        metrics.count(repository, Counter.COMMITS_WALKED, count);
+        walk.reset();
+        walk.sort(RevSort.TOPO);
+        walk.sort(RevSort.REVERSE, true);
+        markStarts(walk, starts);
+    }
+
+    private static void markStarts(RevWalk walk, Collection<ObjectId> starts)
+            throws IOException {
+        for (var start : starts) {
+            walk.markStart(walk.parseCommit(start));
+        }
+    }
+
+    /**
+     * Evaluates the state of the commit from the states of its parents
+     * and drops the states that are no longer needed.
+     */
+    private State process(HistoryWalk walk, ObjectReader reader,
+            HistoryCommit commit) throws IOException {
+        // Determine the latest tag
+        var tag = tags.get(commit);
+        for (var parent : commit.getParents()) {
+            var parentTag = ((HistoryCommit) parent).state.tag();
+            if (parentTag != null
+                && (tag == null || parentTag.rank() < tag.rank())) {
+                tag = parentTag;
+            }
+        }
+
+        // Determine changes since the tag
+        Path change = null;
+        if (tag != null && tag != tags.get(commit)) {
+            for (var parent : commit.getParents()) {
+                var state = ((HistoryCommit) parent).state;
+                change = tag.equals(state.tag()) ? state.change()
+                    : changeSince(reader, parent, tag.commit());
+                if (change != null) {
+                    break;
+                }
+            }
+            if (change == null) {
+                change = ownChange(walk, reader, commit);
+            }
+        }
+
+        // Update states
+        var state = new State(tag, change);
+        if (commit.children > 0) {
+            commit.state = state;
+        }
+        for (var parent : commit.getParents()) {
+            if (--((HistoryCommit) parent).children == 0) {
+                ((HistoryCommit) parent).state = null;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Walks the commits reachable from the given commit but not
+     * from the tagged commit.
+     */
+    private Path changeSince(ObjectReader reader, AnyObjectId from,
+            ObjectId tagged) throws IOException {
+        try (var walk = new RevWalk(reader)) {
+            walk.markStart(walk.parseCommit(from));
+            walk.markUninteresting(walk.parseCommit(tagged));
+            for (var commit : walk) {
+                metrics.count(repository, Counter.COMMITS_WALKED, 1);
+                var change = ownChange(walk, reader, commit);
+                if (change != null) {
+                    return change;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first matching file changed by the commit
+     * (compared with its first parent).
+     */
+    private Path ownChange(RevWalk walk, ObjectReader reader,
+            RevCommit commit) throws IOException {
+        if (!VersionEvaluatorProvider.mayHaveChanged(walk, commit,
+            directories)) {
+            return null;
+        }
+        metrics.count(repository, Counter.TREES_DIFFED, 1);
+        var event = new FlightEvents.DiffBatch();
+        event.begin();
+        int paths = 0;
+        try (var treeWalk = new TreeWalk(reader)) {
+            if (commit.getParentCount() == 0) {
+                treeWalk.addTree(new EmptyTreeIterator());
+            } else {
+                treeWalk.addTree(walk.parseCommit(commit.getParent(0))
+                    .getTree());
+            }
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(directories == null ? TreeFilter.ANY_DIFF
+                : AndTreeFilter.create(PathFilterGroup.createFromStrings(
+                    directories.stream().map(
+                        d -> new String(d, StandardCharsets.UTF_8)).toList()),
+                    TreeFilter.ANY_DIFF));
+            while (treeWalk.next()) {
+                paths++;
+                var path = Path.of(treeWalk.getPathString());
+                if (matches.test(path)) {
+                    return path;
+                }
+            }
+        } finally {
+            if (event.shouldCommit()) {
+                event.commit = commit.getName();
+                event.paths = paths;
+                event.commit();
+            }
+        }
+        return null;
+    }
+
+    private String version(State state, String branch) {
+        view.tag = state.tag();
+        view.change = state.change();
+        view.branch = branch;
+        return view.version();
+    }
+
+    /**
+     * A commit with the information needed for the evaluation.
+     */
+    @SuppressWarnings("serial")
+    private static final class HistoryCommit extends RevCommit {
+        private int children;
+        private State state;
+
+        private HistoryCommit(AnyObjectId id) {
+            super(id);
+        }
+    }
+
+    /**
+     * Creates {@link HistoryCommit}s.
+     */
+    private static final class HistoryWalk extends RevWalk {
+
+        private HistoryWalk(ObjectReader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected RevCommit createCommit(AnyObjectId id) {
+            return new HistoryCommit(id);
+        }
+    }
+
+    /**
+     * The evaluator passed to the tag processor. Reports the state
+     * of the commit being processed.
+     */
+    private static final class CommitView extends VersionEvaluatorProvider {
+        private final TagProcessor processor;
+        private Tag tag;
+        private String branch;
+        private Path change;
+
+        private CommitView(Repository repository, TagProcessor processor) {
+            repository(repository);
+            this.processor = processor;
+        }
+
+        @Override
+        public String branch() {
+            return branch;
+        }
+
+        @Override
+        public Stream<Path> dirtyFiles() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Stream<Path> modifiedFiles() {
+            return change == null ? Stream.empty() : Stream.of(change);
+        }
+
+        @Override
+        public boolean anyChange() {
+            return change != null;
+        }
+
+        @Override
+        public String version() {
+            try {
+                return processor.version(this,
+                    tag == null ? null : tag.name(),
+                    tag == null ? "0.0.0" : tag.version());
+            } catch (IOException | GitAPIException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
+
+/**
+ * Publishes the version evaluated by a {@link VersionEvaluator} each
+ * time it changes.
+ *
+ * <p>While there are subscribers, a (virtual) worker thread watches
+ * the repository with a {@link WorktreeWatcher}. Changes are debounced:
+ * the version is evaluated when no further relevant change has been
+ * reported for the debounce interval (or when changes have been
+ * reported continuously for ten intervals). The version is evaluated
+ * lazily, i.e. only if a subscriber has outstanding demand, and at
+ * most once for all subscribers. A subscriber without demand is
+ * brought up to date when it requests the next item. Items are only
+ * delivered if the version differs from the one delivered last to
+ * the subscriber.
+ *
+ * <p>If the evaluation of the version fails (e.g. because git holds
+ * the index's lock while the repository is being modified), the
+ * emission is skipped and the evaluation is repeated after the
+ * debounce interval. Subscribers are only terminated with
+ * {@link Flow.Subscriber#onError(Throwable)} if watching the
+ * repository fails.
+ */
+final class VersionPublisher implements Flow.Publisher<String> {
+
+    @SuppressWarnings("PMD.FieldNamingConventions")
+    private static final Logger logger
+        = Logger.getLogger(VersionPublisher.class.getName());
+    private static final int MAX_DEBOUNCE_INTERVALS = 10;
+    private final VersionEvaluator evaluator;
+    private final Repository repository;
+    private final Predicate<String> relevant;
+    private final Duration debounce;
+    private final List<UpdateSubscription> subscriptions
+        = new CopyOnWriteArrayList<>();
+    private Thread worker;
+    private LongConsumer cycleListener = generation -> {
+    };
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param evaluator the evaluator
+     * @param repository the repository to watch
+     * @param relevant tests if a change of a path (relative to the
+     * work tree's root) may affect the version
+     * @param debounce the debounce interval
+     */
+    /* default */ VersionPublisher(VersionEvaluator evaluator,
+            Repository repository, Predicate<String> relevant,
+            Duration debounce) {
+        this.evaluator = evaluator;
+        this.repository = repository;
+        this.relevant = relevant;
+        this.debounce = debounce;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        Objects.requireNonNull(subscriber);
+        for (var existing : subscriptions) {
+            if (existing.subscriber == subscriber) {
+                // Rule 1.9, onSubscribe must be signalled first
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long count) {
+                        // Already failed
+                    }
+
+                    @Override
+                    public void cancel() {
+                        // Already failed
+                    }
+                });
+                subscriber.onError(new IllegalStateException(
+                    "Already subscribed"));
+                return;
+            }
+        }
+        var subscription = new UpdateSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (worker == null) {
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * Sets a listener that is invoked by the worker thread each time
+     * the subscribers have been brought up to date. The listener
+     * receives the generation of the repository's state, which is
+     * incremented each time a relevant change has been reported and
+     * the debounce interval has passed.
+     *
+     * @param listener the listener
+     * @return the publisher
+     */
+    /* default */ VersionPublisher cycleListener(LongConsumer listener) {
+        cycleListener = Objects.requireNonNull(listener);
+        return this;
+    }
+
+    private void startWorker() {
+        worker = Thread.ofVirtual().name("gitversioning-updates")
+            .start(this::run);
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void run() {
+        try (var watcher = new WorktreeWatcher(repository)) {
+            long generation = 1;
+            long pendingSince = 0;
+            while (true) {
+                synchronized (this) {
+                    if (subscriptions.isEmpty()) {
+                        worker = null;
+                        return;
+                    }
+                }
+                var changes = watcher.collect(debounce);
+                if (changes != null && (changes.rescan()
+                    || changes.paths().stream().anyMatch(relevant))) {
+                    if (pendingSince == 0) {
+                        pendingSince = System.nanoTime();
+                    }
+                    if (System.nanoTime() - pendingSince < debounce.toNanos()
+                        * MAX_DEBOUNCE_INTERVALS) {
+                        continue;
+                    }
+                }
+                if (pendingSince != 0) {
+                    generation++;
+                    pendingSince = 0;
+                }
+                if (deliver(generation)) {
+                    cycleListener.accept(generation);
+                }
+            }
+        } catch (InterruptedException e) {
+            failAll(new IllegalStateException("Watcher interrupted", e));
+        } catch (IOException | RuntimeException e) {
+            failAll(e);
+        }
+        synchronized (this) {
+            // Subscribers may have been added after failing
+            worker = null;
+            if (!subscriptions.isEmpty()) {
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * Delivers the version to the subscribers with demand that have
+     * not seen the generation yet.
+     *
+     * @return false if the version could not be evaluated
+     */
+    @SuppressWarnings({ "PMD.AvoidCatchingGenericException",
+        "PMD.CognitiveComplexity" })
+    private boolean deliver(long generation) {
+        String version = null;
+        for (var subscription : subscriptions) {
+            if (subscription.cancelled) {
+                subscriptions.remove(subscription);
+                continue;
+            }
+            if (subscription.invalidRequest) {
+                subscriptions.remove(subscription);
+                subscription.subscriber.onError(new IllegalArgumentException(
+                    "Requested items must be positive (see Reactive Streams"
+                        + " rule 3.9)"));
+                continue;
+            }
+            if (subscription.seen >= generation
+                || subscription.demand.get() == 0) {
+                continue;
+            }
+            if (version == null) {
+                try {
+                    version = evaluator.version();
+                } catch (RuntimeException e) {
+                    // Probably transient, retried after the debounce
+                    logger.log(Level.FINE, e,
+                        () -> "Evaluating the version failed, will retry.");
+                    return false;
+                }
+            }
+            subscription.seen = generation;
+            if (version.equals(subscription.last)) {
+                continue;
+            }
+            subscription.last = version;
+            subscription.demand.getAndUpdate(
+                d -> d == Long.MAX_VALUE ? d : d - 1);
+            try {
+                subscription.subscriber.onNext(version);
+            } catch (RuntimeException e) {
+                // Rule 2.13, subscriber is considered cancelled
+                subscriptions.remove(subscription);
+            }
+        }
+        return true;
+    }
+
+    private void failAll(Throwable throwable) {
+        for (var subscription : subscriptions) {
+            subscriptions.remove(subscription);
+            if (!subscription.cancelled) {
+                subscription.subscriber.onError(throwable);
+            }
+        }
+    }
+
+    /**
+     * The subscription. Signals are only sent from the worker thread.
+     */
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private static final class UpdateSubscription
+            implements Flow.Subscription {
+        private final Flow.Subscriber<? super String> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile boolean invalidRequest;
+        private long seen;
+        private String last;
+
+        private UpdateSubscription(
+                Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                invalidRequest = true;
+                return;
+            }
+            demand.accumulateAndGet(count,
+                (current, added) -> current + added < 0 ? Long.MAX_VALUE
+                    : current + added);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,776 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jdrupes.gitversioning.api.UntrackedFiles;
+
+/**
+ * Computes the paths of the dirty (uncommitted or untracked) files in
+ * a repository's work tree. I/O errors are reported as
+ * {@link IllegalStateException}s.
+ *
+ * <p>With the default parallelism of 1, the status is evaluated by
+ * a single {@link IndexDiff}, i.e. in the same way as JGit's
+ * {@link org.eclipse.jgit.api.StatusCommand} evaluates it.
+ *
+ * <p>If a parallelism greater than one is set, the work tree is
+ * partitioned by its top-level directories. Each partition is compared
+ * with the (shared) index (including the re-hashing of racily clean
+ * files) in a {@link ForkJoinPool} with the given parallelism. Files
+ * in the work tree's root directory form an additional partition.
+ * The submodules are inspected concurrently with the partitions.
+ * As {@link IndexDiff} cannot be given an index, the partitions are
+ * compared by tree walks that compare HEAD, the index and the work
+ * tree in the same way as {@link IndexDiff}. The index is thus read
+ * only once per status evaluation.
+ *
+ * <p>The status can be {@link #restrictTo(Collection) restricted} to
+ * given paths. A restricted status is never partitioned.
+ *
+ * <p>The search for untracked files can be limited, see
+ * {@link #untrackedFiles(UntrackedFiles)}. Untracked entries (entries
+ * that are neither in HEAD nor in the index) are then excluded by a
+ * filter before the walk descends into them. Likewise, the inspection
+ * of submodules can be limited, see
+ * {@link #submodules(IgnoreSubmoduleMode, boolean)}.
+ */
+final class WorktreeStatus {
+
+    private static final int TREE = 0;
+    private static final int INDEX = 1;
+    private static final int WORKDIR = 2;
+    private static final int INTERRUPT_CHECK_INTERVAL = 256;
+    private final Repository repository;
+    private int parallelism = 1;
+    private TreeFilter restriction;
+    private UntrackedFiles untrackedMode = UntrackedFiles.ALL;
+    private IgnoreSubmoduleMode submoduleMode;
+    private boolean scopedSubmodules;
+    private List<byte[]> directories;
+    private Predicate<String> matches = p -> true;
+    private LongAdder statCounter;
+
+    /**
+     * The paths of the uncommitted (added, changed, removed, missing,
+     * modified or conflicting) and of the untracked files.
+     *
+     * @param uncommitted the uncommitted files
+     * @param untracked the untracked files
+     */
+    /* default */ record Status(Set<String> uncommitted,
+            Set<String> untracked) {
+    }
+
+    /**
+     * The changes found by a walk. Missing submodules are reported
+     * as uncommitted unless another walk finds that they have not
+     * been initialized and their directory is empty.
+     */
+    private record Changes(Set<String> uncommitted, Set<String> untracked,
+            Set<String> missingSubmodules, Set<String> emptySubmodules) {
+
+        private Changes() {
+            this(new HashSet<>(), new HashSet<>(), new HashSet<>(),
+                new HashSet<>());
+        }
+    }
+
+    /**
+     * Creates a new status for the given repository.
+     *
+     * @param repository the repository
+     */
+    /* default */ WorktreeStatus(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Sets the parallelism. Defaults to 1, i.e. the work tree is
+     * scanned by the invoking thread.
+     *
+     * @param parallelism the parallelism
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Restricts the status to the given paths (files or directories)
+     * relative to the work tree's root.
+     *
+     * @param paths the paths, must not be empty
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus restrictTo(Collection<String> paths) {
+        restriction = PathFilterGroup.createFromStrings(paths);
+        return this;
+    }
+
+    /**
+     * Sets the scope used to limit the search for untracked files
+     * and the inspection of submodules. Defaults to all files.
+     *
+     * @param directories the directories (as raw paths) that contain
+     * all matching files or {@code null} if files anywhere may match
+     * @param matches tests if a path matches the file selection
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus scope(List<byte[]> directories,
+            Predicate<String> matches) {
+        this.directories = directories;
+        this.matches = matches;
+        return this;
+    }
+
+    /**
+     * Sets how untracked files are searched for.
+     *
+     * @param mode the mode
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus untrackedFiles(UntrackedFiles mode) {
+        this.untrackedMode = mode;
+        return this;
+    }
+
+    /**
+     * Sets how submodules are inspected.
+     *
+     * @param mode the mode, {@code null} to use the setting from
+     * the repository's configuration
+     * @param scoped if {@code true}, only submodules in the scope
+     * are inspected
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus submodules(IgnoreSubmoduleMode mode,
+            boolean scoped) {
+        this.submoduleMode = mode;
+        this.scopedSubmodules = scoped;
+        return this;
+    }
+
+    /**
+     * Sets a counter that is incremented for every work tree file
+     * that is compared with its index entry.
+     *
+     * @param counter the counter, {@code null} if files are not counted
+     * @return the worktree status
+     */
+    /* default */ WorktreeStatus statCounter(LongAdder counter) {
+        this.statCounter = counter;
+        return this;
+    }
+
+    /**
+     * Returns the paths of all uncommitted (added, changed, removed,
+     * missing, modified or conflicting) and all untracked files.
+     *
+     * @return the paths
+     */
+    /* default */ Stream<String> dirtyPaths() {
+        var status = status();
+        return Stream.concat(status.uncommitted().stream(),
+            status.untracked().stream());
+    }
+
+    /**
+     * Evaluates the status.
+     *
+     * @return the status
+     */
+    /* default */ Status status() {
+        var caller = Thread.currentThread();
+        if (parallelism == 1) {
+            return indexDiffStatus(caller);
+        }
+        DirCache dirCache;
+        ObjectId tree;
+        try {
+            dirCache = repository.readDirCache();
+            // Built lazily by the iterators, must not be built concurrently
+            dirCache.getCacheTree(true);
+            tree = repository.resolve(Constants.HEAD + "^{tree}");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        List<Changes> results;
+        if (restriction != null) {
+            results = List.of(
+                walk(dirCache, tree, and(restriction, filter()), caller),
+                submodules(dirCache, and(restriction, filter())));
+        } else {
+            results = parallelWalks(dirCache, tree, caller);
+        }
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Status check interrupted");
+        }
+        var uncommitted = new TreeSet<String>();
+        var untracked = new TreeSet<String>();
+        var emptySubmodules = new HashSet<String>();
+        for (var changes : results) {
+            uncommitted.addAll(changes.uncommitted());
+            untracked.addAll(changes.untracked());
+            emptySubmodules.addAll(changes.emptySubmodules());
+        }
+        for (var changes : results) {
+            changes.missingSubmodules().stream()
+                .filter(p -> !emptySubmodules.contains(p))
+                .forEach(uncommitted::add);
+        }
+        return new Status(uncommitted, untracked);
+    }
+
+    /**
+     * Evaluates the status with a single {@link IndexDiff}.
+     */
+    private Status indexDiffStatus(Thread caller) {
+        var workTree = statCounter == null
+            ? new FileTreeIterator(repository)
+            : new CountingFileTreeIterator(repository, statCounter);
+        try {
+            var diff = new IndexDiff(repository, Constants.HEAD, workTree);
+            diff.setFilter(and(new InterruptionFilter(caller),
+                and(restriction, filter())));
+            diff.setIgnoreSubmoduleMode(submoduleMode);
+            diff.diff();
+            if (caller.isInterrupted()) {
+                throw new CancellationException("Status check interrupted");
+            }
+            var uncommitted = new TreeSet<String>();
+            Stream.of(diff.getAdded(), diff.getChanged(), diff.getRemoved(),
+                diff.getMissing(), diff.getModified(), diff.getConflicting())
+                .forEach(uncommitted::addAll);
+            return new Status(uncommitted, new TreeSet<>(diff.getUntracked()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    private List<Changes> parallelWalks(DirCache dirCache, ObjectId tree,
+            Thread caller) {
+        var topLevel = new TreeSet<String>();
+        try (var entries = Files.list(repository.getWorkTree().toPath())) {
+            entries
+                .filter(p -> Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+                .map(p -> p.getFileName().toString())
+                .filter(n -> !Constants.DOT_GIT.equals(n))
+                .forEach(topLevel::add);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        var partitions = new ArrayList<TreeFilter>();
+        partitions.add(new OutsideDirectories(topLevel));
+        topLevel.stream().map(PathFilter::create).forEach(partitions::add);
+        try (var pool = new ForkJoinPool(parallelism)) {
+            var submodules = pool.submit(
+                () -> submodules(dirCache, filter()));
+            var walks = pool.submit(() -> partitions.parallelStream()
+                .map(partition -> walk(dirCache, tree,
+                    and(partition, filter()), caller))
+                .toList());
+            var result = new ArrayList<>(walks.get());
+            result.add(submodules.get());
+            return result;
+        } catch (InterruptedException e) {
+            caller.interrupt();
+            throw new CancellationException("Status check interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns a new filter that restricts the walks according to the
+     * untracked files and submodule settings. Some of the filters
+     * have state, so each walk needs its own instance.
+     */
+    private TreeFilter filter() {
+        TreeFilter result = null;
+        if (untrackedMode != UntrackedFiles.ALL
+            && (untrackedMode != UntrackedFiles.SCOPED
+                || directories != null)) {
+            result = new UntrackedFilter(untrackedMode, directories, matches);
+        }
+        if (scopedSubmodules) {
+            result = and(result,
+                new SubmoduleScopeFilter(directories, matches));
+        }
+        return result;
+    }
+
+    /**
+     * Compares HEAD, the index and the work tree like
+     * {@link IndexDiff#diff()} does, but with the given (shared)
+     * index. Submodules are inspected separately, see
+     * {@link #submodules(DirCache, TreeFilter)}.
+     */
+    private Changes walk(DirCache dirCache, ObjectId tree, TreeFilter filter,
+            Thread caller) {
+        var changes = new Changes();
+        try (var walk = new TreeWalk(repository)) {
+            walk.setOperationType(OperationType.CHECKIN_OP);
+            walk.setRecursive(true);
+            if (tree == null) {
+                walk.addTree(new EmptyTreeIterator());
+            } else {
+                walk.addTree(tree);
+            }
+            walk.addTree(new DirCacheIterator(dirCache));
+            var workTree = statCounter == null
+                ? new FileTreeIterator(repository)
+                : new CountingFileTreeIterator(repository, statCounter);
+            walk.addTree(workTree);
+            workTree.setDirCacheIterator(walk, INDEX);
+            var filters = new ArrayList<TreeFilter>();
+            filters.add(new InterruptionFilter(caller));
+            if (filter != null) {
+                filters.add(filter);
+            }
+            filters.add(new SkipWorkTreeFilter(INDEX));
+            filters.add(new IndexDiffFilter(INDEX, WORKDIR));
+            walk.setFilter(AndTreeFilter.create(filters));
+            while (walk.next()) {
+                record(walk, changes);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return changes;
+    }
+
+    @SuppressWarnings({ "PMD.CognitiveComplexity",
+        "PMD.CyclomaticComplexity" })
+    private void record(TreeWalk walk, Changes changes) throws IOException {
+        var head = walk.getTree(TREE, AbstractTreeIterator.class);
+        var index = walk.getTree(INDEX, DirCacheIterator.class);
+        var workTree = walk.getTree(WORKDIR, WorkingTreeIterator.class);
+        var path = walk.getPathString();
+        boolean ignoreAll = submoduleMode == IgnoreSubmoduleMode.ALL;
+        if (index != null && index.getDirCacheEntry() != null
+            && index.getDirCacheEntry().getStage() > 0) {
+            // Conflicting
+            changes.uncommitted().add(path);
+            return;
+        }
+        if (head != null) {
+            if (index == null) {
+                // Removed
+                if (!isGitLink(head) || !ignoreAll) {
+                    changes.uncommitted().add(path);
+                }
+                if (workTree != null) {
+                    changes.untracked().add(path);
+                }
+            } else if ((!head.idEqual(index)
+                || head.getEntryRawMode() != index.getEntryRawMode())
+                && (!isGitLink(head) || !isGitLink(index) || !ignoreAll)) {
+                // Changed
+                changes.uncommitted().add(path);
+            }
+        } else if (index != null) {
+            // Added
+            if (!isGitLink(index) || !ignoreAll) {
+                changes.uncommitted().add(path);
+            }
+        } else if (workTree != null && !workTree.isEntryIgnored()) {
+            changes.untracked().add(path);
+        }
+        if (index == null) {
+            return;
+        }
+        if (workTree == null) {
+            // Missing
+            if (!isGitLink(index)) {
+                changes.uncommitted().add(path);
+            } else if (!ignoreAll) {
+                changes.missingSubmodules().add(path);
+            }
+        } else if ((!isGitLink(index) || !isGitLink(workTree)
+            || !ignoreAll && submoduleMode != IgnoreSubmoduleMode.DIRTY)
+            && workTree.isModified(index.getDirCacheEntry(), true,
+                walk.getObjectReader())) {
+            // Modified
+            changes.uncommitted().add(path);
+        }
+    }
+
+    private static boolean isGitLink(AbstractTreeIterator iterator) {
+        return iterator.getEntryRawMode() == FileMode.GITLINK.getBits();
+    }
+
+    /**
+     * Inspects the submodules like {@link IndexDiff#diff()} does,
+     * using the given (shared) index.
+     */
+    private Changes submodules(DirCache dirCache, TreeFilter filter) {
+        var changes = new Changes();
+        if (submoduleMode == IgnoreSubmoduleMode.ALL) {
+            return changes;
+        }
+        try (var walk = new SubmoduleWalk(repository)) {
+            walk.setTree(new DirCacheIterator(dirCache));
+            if (filter != null) {
+                walk.setFilter(filter);
+            }
+            while (walk.next()) {
+                inspect(walk, changes);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return changes;
+    }
+
+    private void inspect(SubmoduleWalk walk, Changes changes)
+            throws IOException {
+        var mode = submoduleMode;
+        if (mode == null) {
+            try {
+                mode = walk.getModulesIgnore();
+            } catch (ConfigInvalidException e) {
+                throw new IOException("Invalid ignore setting for submodule "
+                    + walk.getPath(), e);
+            }
+        }
+        if (mode == IgnoreSubmoduleMode.ALL) {
+            return;
+        }
+        var path = walk.getPath();
+        try (var submodule = walk.getRepository()) {
+            if (submodule == null) {
+                // Not initialized yet, not missing if its directory is empty
+                var gitDir = new File(new File(repository.getCommonDirectory(),
+                    Constants.MODULES), path);
+                var directory
+                    = SubmoduleWalk.getSubmoduleDirectory(repository, path);
+                if (!gitDir.isDirectory() && directory.isDirectory()
+                    && isEmpty(directory.toPath())) {
+                    changes.emptySubmodules().add(path);
+                }
+                return;
+            }
+            var head = submodule.resolve(Constants.HEAD);
+            if (head != null && !head.equals(walk.getObjectId())) {
+                changes.uncommitted().add(path);
+                return;
+            }
+            if (mode == IgnoreSubmoduleMode.DIRTY) {
+                return;
+            }
+            var diff = new IndexDiff(submodule, walk.getObjectId(),
+                new FileTreeIterator(submodule));
+            if (diff.diff() && (mode != IgnoreSubmoduleMode.UNTRACKED
+                || !diff.getAdded().isEmpty() || !diff.getChanged().isEmpty()
+                || !diff.getConflicting().isEmpty()
+                || !diff.getMissing().isEmpty()
+                || !diff.getModified().isEmpty()
+                || !diff.getRemoved().isEmpty())) {
+                changes.uncommitted().add(path);
+            }
+        }
+    }
+
+    private static boolean isEmpty(Path directory) {
+        try (var entries = Files.list(directory)) {
+            return entries.findAny().isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static TreeFilter and(TreeFilter first, TreeFilter second) {
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        return AndTreeFilter.create(first, second);
+    }
+
+    /**
+     * Checks if the walk's current path is a directory that contains
+     * one of the directories or a path in one of the directories.
+     */
+    private static boolean overlaps(TreeWalk walker,
+            List<byte[]> directories) {
+        var raw = walker.getRawPath();
+        int length = walker.getPathLength();
+        for (var directory : directories) {
+            int common = Math.min(length, directory.length);
+            if (Arrays.equals(raw, 0, common, directory, 0, common)
+                && (length == directory.length
+                    || length < directory.length
+                        && directory[length] == '/' && walker.isSubtree()
+                    || length > directory.length
+                        && raw[directory.length] == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A file tree iterator that counts the files that are compared
+     * with their index entries.
+     */
+    private static final class CountingFileTreeIterator
+            extends FileTreeIterator {
+
+        private final LongAdder counter;
+        private DirCacheEntry lastEntry;
+
+        private CountingFileTreeIterator(Repository repository,
+                LongAdder counter) {
+            super(repository);
+            this.counter = counter;
+        }
+
+        private CountingFileTreeIterator(CountingFileTreeIterator parent,
+                File directory) {
+            super(parent, directory, parent.fs, parent.fileModeStrategy);
+            this.counter = parent.counter;
+        }
+
+        @Override
+        protected AbstractTreeIterator enterSubtree() {
+            // Invoked only if the directory is not skipped as ignored
+            return new CountingFileTreeIterator(this, getEntryFile());
+        }
+
+        @Override
+        public boolean isModified(DirCacheEntry entry,
+                boolean forceContentCheck, ObjectReader reader)
+                throws IOException {
+            // Invoked again by IndexDiff for entries that pass its filter
+            if (entry != lastEntry) {
+                lastEntry = entry;
+                counter.increment();
+            }
+            return super.isModified(entry, forceContentCheck, reader);
+        }
+    }
+
+    /**
+     * Stops the walk when the thread that requested the status
+     * has been interrupted.
+     */
+    private static final class InterruptionFilter extends TreeFilter {
+        private final Thread caller;
+        private int count;
+
+        private InterruptionFilter(Thread caller) {
+            this.caller = caller;
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) {
+            if (++count % INTERRUPT_CHECK_INTERVAL == 0
+                && caller.isInterrupted()) {
+                throw StopWalkException.INSTANCE;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return new InterruptionFilter(caller);
+        }
+    }
+
+    /**
+     * Excludes the given top-level directories.
+     */
+    private static final class OutsideDirectories extends TreeFilter {
+        private final Set<String> directories;
+
+        private OutsideDirectories(Set<String> directories) {
+            this.directories = directories;
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) {
+            return walker.getDepth() > 0 || !walker.isSubtree()
+                || !directories.contains(walker.getPathString());
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+
+    /**
+     * Restricts the untracked entries according to the
+     * {@link UntrackedFiles} mode. Tracked entries are always
+     * included.
+     */
+    private static final class UntrackedFilter extends TreeFilter {
+        private final UntrackedFiles mode;
+        private final List<byte[]> directories;
+        private final Predicate<String> matches;
+        private String untrackedRoot;
+        private String matchFoundIn;
+
+        private UntrackedFilter(UntrackedFiles mode, List<byte[]> directories,
+                Predicate<String> matches) {
+            this.mode = mode;
+            this.directories = directories;
+            this.matches = matches;
+        }
+
+        @Override
+        @SuppressWarnings("PMD.CognitiveComplexity")
+        public boolean include(TreeWalk walker) {
+            // Submodule walks have a single tree only.
+            if (walker.getTreeCount() < 3 || walker.getRawMode(0) != 0
+                || walker.getRawMode(1) != 0) {
+                return true;
+            }
+            if (mode == UntrackedFiles.NONE) {
+                return false;
+            }
+            if (directories != null && !overlaps(walker, directories)) {
+                return false;
+            }
+            if (mode != UntrackedFiles.FIRST_MATCH) {
+                return true;
+            }
+            var path = walker.getPathString();
+            if (matchFoundIn != null && path.startsWith(matchFoundIn)) {
+                return false;
+            }
+            if (walker.isSubtree()) {
+                if (untrackedRoot == null
+                    || !path.startsWith(untrackedRoot)) {
+                    untrackedRoot = path + "/";
+                }
+                return true;
+            }
+            if (untrackedRoot != null && path.startsWith(untrackedRoot)
+                && matches.test(path)) {
+                matchFoundIn = untrackedRoot;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return new UntrackedFilter(mode, directories, matches);
+        }
+    }
+
+    /**
+     * Excludes the submodules that are not in scope from the
+     * submodule walk. The submodule walk has a single tree only,
+     * the entries of other walks are always included.
+     */
+    private static final class SubmoduleScopeFilter extends TreeFilter {
+        private final List<byte[]> directories;
+        private final Predicate<String> matches;
+
+        private SubmoduleScopeFilter(List<byte[]> directories,
+                Predicate<String> matches) {
+            this.directories = directories;
+            this.matches = matches;
+        }
+
+        @Override
+        public boolean include(TreeWalk walker) {
+            if (walker.getTreeCount() != 1) {
+                return true;
+            }
+            if (directories != null) {
+                return overlaps(walker, directories);
+            }
+            return walker.isSubtree() || matches.test(walker.getPathString());
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    }
+}
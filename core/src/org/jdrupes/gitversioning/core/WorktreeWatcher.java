@@ -0,0 +1,368 @@
+/*
+ * JDrupes GitVersioning
+ * Copyright (C) 2026 Michael N. Lipp
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.jdrupes.gitversioning.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.NotIgnoredFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.SystemReader;
+
+/**
+ * Watches a repository's work tree and repository directory for
+ * changes that may affect the status or the version.
+ *
+ * <p>All (not ignored) directories of the work tree, the repository's
+ * directory and its references are registered with a
+ * {@link WatchService}. Directories created later are registered
+ * when their creation is reported, unless they are ignored. The
+ * events are collected as {@link Changes}. A change of the index,
+ * of HEAD or of the references, a change of the ignore rules and
+ * an overflow of the watch service's event queue are reported as
+ * requiring a complete re-evaluation. For bare repositories, only
+ * the repository's directory and its references are watched.
+ *
+ * <p>Besides the {@code .gitignore} files, the ignore rules are
+ * read from {@code $GIT_DIR/info/exclude} and from the file
+ * configured as {@code core.excludesFile} (or its default), which
+ * are watched as well if their directories exist. When the rules
+ * change or events have been lost, the work tree is scanned again,
+ * because directories that were ignored may now have to be watched
+ * and vice versa.
+ *
+ * <p>Note that the changes depend on the timely delivery of the
+ * file system events. Some implementations of the watch service
+ * (notably the polling implementation used on macOS) deliver events
+ * with a delay of several seconds.
+ */
+final class WorktreeWatcher implements Closeable {
+
+    private static final Set<String> GIT_FILES
+        = Set.of(Constants.HEAD, "index", Constants.PACKED_REFS);
+    private final Repository repository;
+    private final Path workTree;
+    private final Path gitDir;
+    private final Set<Path> ignoreFiles = new HashSet<>();
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> watched = new ConcurrentHashMap<>();
+
+    /**
+     * The changes reported by the watch service.
+     *
+     * @param rescan whether a complete re-evaluation is required
+     * @param paths the changed paths (files or directories) relative
+     * to the work tree's root
+     */
+    /* default */ record Changes(boolean rescan, Set<String> paths) {
+    }
+
+    /**
+     * Creates a new watcher for the given repository.
+     *
+     * @param repository the repository
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    /* default */ WorktreeWatcher(Repository repository) throws IOException {
+        this.repository = repository;
+        workTree = repository.isBare() ? null
+            : repository.getWorkTree().toPath().toAbsolutePath();
+        gitDir = repository.getDirectory().toPath().toAbsolutePath();
+        watcher = gitDir.getFileSystem().newWatchService();
+        try {
+            if (workTree != null) {
+                register(workTree);
+                registerWorkTree(null);
+                registerIgnoreFiles();
+            }
+            register(gitDir);
+            var refs = gitDir.resolve(Constants.R_REFS);
+            if (Files.isDirectory(refs)) {
+                registerAll(refs);
+            }
+        } catch (IOException e) {
+            watcher.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Collects the changes. Waits at most the given time for the
+     * first change to be reported, then collects all changes reported
+     * so far.
+     *
+     * @param wait the maximum time to wait, {@link Duration#ZERO}
+     * to return immediately
+     * @return the changes or {@code null} if no changes have been
+     * reported
+     * @throws InterruptedException if the thread was interrupted
+     * while waiting
+     */
+    @SuppressWarnings("PMD.AvoidReturningNull")
+    /* default */ Changes collect(Duration wait) throws InterruptedException {
+        WatchKey key = wait.isZero() ? watcher.poll()
+            : watcher.poll(wait.toNanos(), TimeUnit.NANOSECONDS);
+        if (key == null) {
+            return null;
+        }
+        var changed = new TreeSet<String>();
+        boolean rescan = false;
+        boolean rescanWorkTree = false;
+        while (key != null) {
+            var dir = watched.get(key);
+            for (var event : key.pollEvents()) {
+                rescan |= process(dir, event, changed);
+                rescanWorkTree |= changesIgnoreRules(dir, event);
+            }
+            if (!key.reset()) {
+                watched.remove(key);
+            }
+            key = watcher.poll();
+        }
+        if (rescanWorkTree && workTree != null) {
+            rescanWorkTree();
+        }
+        return new Changes(rescan, changed);
+    }
+
+    /**
+     * Checks if the event may have changed the ignore rules or
+     * indicates that events have been lost.
+     */
+    private boolean changesIgnoreRules(Path dir, WatchEvent<?> event) {
+        if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            return true;
+        }
+        var path = dir.resolve(event.context().toString());
+        return ignoreFiles.contains(path) || isIgnoreFileDirectory(path)
+            || workTree != null
+            && dir.startsWith(workTree) && !dir.startsWith(gitDir)
+            && Constants.GITIGNORE_FILENAME.equals(path.getFileName()
+                .toString());
+    }
+
+    /**
+     * Adds the event's path to the changed paths.
+     *
+     * @return true, if a complete re-evaluation is required
+     */
+    private boolean process(Path dir, WatchEvent<?> event,
+            Set<String> changed) {
+        if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            return true;
+        }
+        var name = event.context().toString();
+        var path = dir.resolve(name);
+        if (ignoreFiles.contains(path)) {
+            return true;
+        }
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+            && isIgnoreFileDirectory(path)) {
+            // E.g. $GIT_DIR/info created after the watcher
+            try {
+                register(path);
+            } catch (IOException e) {
+                // Gone again, nothing to watch
+            }
+            return true;
+        }
+        if (!dir.startsWith(gitDir)
+            && (workTree == null || !dir.startsWith(workTree))) {
+            // Other file in the directory of an ignore file
+            return false;
+        }
+        boolean rescan = false;
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+            && !dir.equals(gitDir)
+            && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            rescan = !registerNew(path);
+        }
+        if (dir.startsWith(gitDir)) {
+            return rescan || !name.endsWith(".lock")
+                && (!dir.equals(gitDir) || GIT_FILES.contains(name));
+        }
+        changed.add(workTree.relativize(path).toString()
+            .replace(path.getFileSystem().getSeparator(), "/"));
+        return rescan || Constants.GITIGNORE_FILENAME.equals(name);
+    }
+
+    private void register(Path dir) throws IOException {
+        watched.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY), dir);
+    }
+
+    /**
+     * Registers the directories in the work tree that are not ignored,
+     * either all of them or the given directory and the directories
+     * below it.
+     *
+     * @param directory the directory relative to the work tree,
+     * {@code null} for all directories
+     */
+    private Set<Path> registerWorkTree(String directory)
+            throws IOException {
+        var registered = new HashSet<Path>();
+        try (var walk = new TreeWalk(repository)) {
+            walk.addTree(new FileTreeIterator(repository));
+            TreeFilter filter = new NotIgnoredFilter(0);
+            if (directory != null) {
+                // Also includes the parent directories
+                filter = AndTreeFilter.create(PathFilter.create(directory),
+                    filter);
+            }
+            walk.setFilter(filter);
+            while (walk.next()) {
+                if (walk.isSubtree()) {
+                    var path = walk.getPathString();
+                    if (directory == null
+                        || path.length() >= directory.length()) {
+                        var dir = workTree.resolve(path);
+                        register(dir);
+                        registered.add(dir);
+                    }
+                    walk.enterSubtree();
+                }
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Registers the work tree's directories that are not ignored
+     * (any longer) and cancels the registration of the directories
+     * that are ignored now or have been removed.
+     */
+    private void rescanWorkTree() {
+        Set<Path> registered;
+        try {
+            registered = registerWorkTree(null);
+        } catch (IOException e) {
+            // Work tree is being modified, next rescan will catch up
+            return;
+        }
+        registered.add(workTree);
+        for (var entry : watched.entrySet()) {
+            var dir = entry.getValue();
+            if (dir.startsWith(workTree) && !dir.startsWith(gitDir)
+                && !registered.contains(dir)) {
+                entry.getKey().cancel();
+                watched.remove(entry.getKey());
+            }
+        }
+    }
+
+    private boolean isIgnoreFileDirectory(Path path) {
+        return ignoreFiles.stream().anyMatch(f -> f.getParent().equals(path));
+    }
+
+    /**
+     * Registers the directories of the ignore files.
+     */
+    private void registerIgnoreFiles() throws IOException {
+        ignoreFiles.add(repository.getCommonDirectory().toPath()
+            .toAbsolutePath().resolve(Constants.INFO_EXCLUDE));
+        var fs = repository.getFS();
+        var excludesFile = repository.getConfig().getPath(
+            ConfigConstants.CONFIG_CORE_SECTION, null,
+            ConfigConstants.CONFIG_KEY_EXCLUDESFILE, fs, null, null);
+        if (excludesFile == null) {
+            var xdgConfig = SystemReader.getInstance()
+                .getXdgConfigDirectory(fs);
+            if (xdgConfig != null) {
+                excludesFile = xdgConfig.resolve("git").resolve("ignore");
+            }
+        }
+        if (excludesFile != null) {
+            ignoreFiles.add(excludesFile.toAbsolutePath());
+        }
+        for (var file : ignoreFiles) {
+            var dir = file.getParent();
+            if (Files.isDirectory(dir) && !watched.containsValue(dir)) {
+                register(dir);
+            }
+        }
+    }
+
+    /**
+     * Returns the watched directories.
+     *
+     * @return the directories
+     */
+    /* default */ Set<Path> watchedDirectories() {
+        return Set.copyOf(watched.values());
+    }
+
+    private void registerAll(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(gitDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean registerNew(Path dir) {
+        try {
+            if (dir.startsWith(gitDir)) {
+                registerAll(dir);
+            } else {
+                registerWorkTree(workTree.relativize(dir).toString()
+                    .replace(dir.getFileSystem().getSeparator(), "/"));
+            }
+            return true;
+        } catch (IOException e) {
+            // Directory may already be gone again, play safe
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+}
@@ -0,0 +1,130 @@
+package org.jdrupes.gitversioning.core;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChangedPathsIndexTests {
+
+    private static final ObjectId COMMIT1
+        = ObjectId.fromString("0123456789012345678901234567890123456789");
+    private static final ObjectId COMMIT2
+        = ObjectId.fromString("9876543210987654321098765432109876543210");
+
+    @TempDir
+    Path tempDir;
+
+    private static int[] hashes(String... paths) {
+        int[] result = new int[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            result[i] = ChangedPathsIndex
+                .hash(paths[i].getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    @Test
+    void unknownCommit() throws Exception {
+        var index = ChangedPathsIndex.forFile(tempDir.resolve("idx"));
+        assertFalse(index.contains(COMMIT1));
+        assertNull(index.mayHaveChanged(COMMIT1, hashes("a")));
+    }
+
+    @Test
+    void recordsPathsAndDirectories() throws Exception {
+        var index = ChangedPathsIndex.forFile(tempDir.resolve("idx"));
+        index.record(COMMIT1, List.of("moduleA/src/Main.java", "README"));
+
+        assertTrue(index.contains(COMMIT1));
+        assertEquals(Boolean.TRUE, index.mayHaveChanged(COMMIT1,
+            hashes("moduleA")));
+        assertEquals(Boolean.TRUE, index.mayHaveChanged(COMMIT1,
+            hashes("moduleA/src")));
+        assertEquals(Boolean.TRUE, index.mayHaveChanged(COMMIT1,
+            hashes("README")));
+        assertEquals(Boolean.FALSE, index.mayHaveChanged(COMMIT1,
+            hashes("moduleB", "moduleA/test")));
+    }
+
+    @Test
+    void sharedPerFile() throws Exception {
+        var file = tempDir.resolve("idx");
+        assertSame(ChangedPathsIndex.forFile(file),
+            ChangedPathsIndex.forFile(tempDir.resolve(".").resolve("idx")));
+    }
+
+    @Test
+    void closedWhenReleasedByAllUsers() throws Exception {
+        var file = tempDir.resolve("idx");
+        var first = ChangedPathsIndex.forFile(file);
+        var second = ChangedPathsIndex.forFile(file);
+        first.record(COMMIT1, List.of("moduleA/Main.java"));
+        first.close();
+        assertTrue(second.contains(COMMIT1));
+        second.close();
+
+        // Reopened, with the recorded content
+        try (var index = ChangedPathsIndex.forFile(file)) {
+            assertNotSame(first, index);
+            assertTrue(index.contains(COMMIT1));
+        }
+    }
+
+    @Test
+    void growsGeometrically() throws Exception {
+        var file = tempDir.resolve("idx");
+        var commits = new ArrayList<ObjectId>();
+        try (var index = ChangedPathsIndex.forFile(file)) {
+            for (int i = 0; i < 10_000; i++) {
+                var raw = new byte[20];
+                ByteBuffer.wrap(raw).putInt(i);
+                commits.add(ObjectId.fromRaw(raw));
+                index.record(commits.get(i), List.of("dir" + i + "/file"));
+            }
+        }
+        // Capacity is at most twice the size of the records
+        assertTrue(Files.size(file) < 2 * 10_000 * (20 + 4 + 2 * 4) + 12);
+        try (var index = ChangedPathsIndex.forFile(file)) {
+            for (int i = 0; i < commits.size(); i++) {
+                assertEquals(Boolean.TRUE, index.mayHaveChanged(
+                    commits.get(i), hashes("dir" + i)));
+            }
+        }
+    }
+
+    @Test
+    void emptyCommitKnownUnchanged() throws Exception {
+        var index = ChangedPathsIndex.forFile(tempDir.resolve("idx"));
+        index.record(COMMIT1, List.of());
+        assertEquals(Boolean.FALSE,
+            index.mayHaveChanged(COMMIT1, hashes("moduleA")));
+    }
+
+    @Test
+    void partialRecordIsOverwritten() throws Exception {
+        var index = ChangedPathsIndex.forFile(tempDir.resolve("idx"));
+        index.record(COMMIT1, List.of("moduleA/Main.java"));
+
+        // Simulate a record that was only partially written
+        try (var channel = FileChannel.open(index.file(),
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        }
+        assertFalse(index.contains(COMMIT2));
+
+        index.record(COMMIT2, List.of("moduleB/Main.java"));
+        assertEquals(Boolean.TRUE,
+            index.mayHaveChanged(COMMIT2, hashes("moduleB")));
+        assertEquals(Boolean.FALSE,
+            index.mayHaveChanged(COMMIT1, hashes("moduleB")));
+    }
+}
@@ -0,0 +1,174 @@
+package org.jdrupes.gitversioning.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IndexStatCheckTests {
+
+    @TempDir
+    Path tempDir;
+
+    private Git git;
+    private Repository repository;
+
+    @AfterEach
+    void tearDown() {
+        if (git != null) {
+            git.close();
+        }
+    }
+
+    private void initRepo() throws Exception {
+        git = Git.init().setInitialBranch("main")
+            .setDirectory(tempDir.toFile()).call();
+        repository = git.getRepository();
+        repository.getConfig().setString("user", null, "name", "Test");
+        repository.getConfig().setString("user", null, "email",
+            "test@test.com");
+        repository.getConfig().save();
+    }
+
+    /**
+     * Writes the file with a modification time in the past, so that
+     * the index entries created for it are not racily clean.
+     */
+    private void writeFile(String relativePath, String content)
+            throws java.io.IOException {
+        var path = tempDir.resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+        Files.setLastModifiedTime(path, FileTime.from(
+            Instant.now().minus(1, ChronoUnit.HOURS)));
+    }
+
+    private void commitAll(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage(message).call();
+    }
+
+    private boolean isClean(String... directories) {
+        return new IndexStatCheck(repository, directories.length == 0 ? null
+            : List.of(directories).stream()
+                .map(d -> d.getBytes(StandardCharsets.UTF_8)).toList())
+                    .isClean();
+    }
+
+    private void setupRepo() throws Exception {
+        initRepo();
+        writeFile("README.md", "v1");
+        writeFile("moduleA/src/A.java", "v1");
+        writeFile("moduleB/B.java", "v1");
+        commitAll("initial");
+    }
+
+    @Test
+    void cleanTree() throws Exception {
+        setupRepo();
+        assertTrue(isClean());
+        assertTrue(isClean("moduleA"));
+        assertTrue(new VersionEvaluatorProvider().repository(repository)
+            .fastCleanCheck(true).dirtyFiles().findAny().isEmpty());
+    }
+
+    @Test
+    void modifiedFile() throws Exception {
+        setupRepo();
+        writeFile("moduleA/src/A.java", "version 2");
+        assertFalse(isClean());
+        assertFalse(isClean("moduleA"));
+        assertTrue(isClean("moduleB"));
+    }
+
+    @Test
+    void touchedFileRequiresFullStatus() throws Exception {
+        setupRepo();
+        Files.setLastModifiedTime(tempDir.resolve("moduleB/B.java"),
+            FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+        assertFalse(isClean());
+
+        // The full status still finds the file unchanged
+        assertTrue(new VersionEvaluatorProvider().repository(repository)
+            .fastCleanCheck(true).dirtyFiles().findAny().isEmpty());
+    }
+
+    @Test
+    void racilyCleanEntry() throws Exception {
+        initRepo();
+        Files.writeString(tempDir.resolve("README.md"), "v1");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("initial").call();
+        // Only fails if the file system has a coarse time resolution,
+        // but the entry must never be reported as clean if it is racy.
+        var entryTime = Files.getLastModifiedTime(tempDir.resolve("README.md"));
+        var indexTime = Files.getLastModifiedTime(repository.getIndexFile()
+            .toPath());
+        if (entryTime.compareTo(indexTime) >= 0) {
+            assertFalse(isClean());
+        }
+    }
+
+    @Test
+    void deletedFile() throws Exception {
+        setupRepo();
+        Files.delete(tempDir.resolve("moduleB/B.java"));
+        assertFalse(isClean());
+        assertFalse(isClean("moduleB"));
+        assertTrue(isClean("moduleA"));
+    }
+
+    @Test
+    void untrackedFile() throws Exception {
+        setupRepo();
+        writeFile("moduleA/src/New.java", "new");
+        assertFalse(isClean());
+        assertFalse(isClean("moduleA"));
+        assertTrue(isClean("moduleB"));
+    }
+
+    @Test
+    void ignoredFile() throws Exception {
+        initRepo();
+        writeFile(".gitignore", "build/\n");
+        writeFile("src/A.java", "v1");
+        commitAll("initial");
+        writeFile("build/A.class", "compiled");
+        assertTrue(isClean());
+    }
+
+    @Test
+    void stagedChange() throws Exception {
+        setupRepo();
+        writeFile("moduleA/src/A.java", "version 2");
+        git.add().addFilepattern("moduleA/src/A.java").call();
+        writeFile("moduleA/src/Added.java", "new");
+        git.add().addFilepattern("moduleA/src/Added.java").call();
+        assertFalse(isClean());
+        assertFalse(isClean("moduleA"));
+        assertTrue(isClean("moduleB"));
+    }
+
+    @Test
+    void stagedRemoval() throws Exception {
+        setupRepo();
+        git.rm().addFilepattern("moduleB/B.java").call();
+        assertFalse(isClean());
+        assertFalse(isClean("moduleB"));
+    }
+
+    @Test
+    void noIndex() throws Exception {
+        initRepo();
+        assertFalse(isClean());
+    }
+}
@@ -73,8 +73,12 @@ class MavenStyleTagProcessorTests {
         git.checkout().setCreateBranch(true).setName(name).call();
     }
 
+    /* default */ VersionEvaluatorProvider newProvider() {
+        return new VersionEvaluatorProvider();
+    }
+
     private VersionEvaluator createEvaluator() {
-        return new VersionEvaluatorProvider()
+        return newProvider()
             .repository(repository);
     }
 
@@ -252,6 +256,56 @@ class MavenStyleTagProcessorTests {
         assertEquals("1.0.1-develop-SNAPSHOT", result);
     }
 
+    // --- Concurrent checks ---
+
+    @Test
+    void concurrentChecksDirtyFiles() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "x");
+        commitAll("initial");
+        tag("1.0.0");
+        writeFile("src/NewFile.java", "new");
+
+        var processor = new MavenStyleTagProcessor().concurrentChecks(true);
+        var evaluator = createEvaluator().matchingGlob("**");
+        var result = processor.version(evaluator, "1.0.0", "1.0.0");
+
+        assertEquals("1.0.1-SNAPSHOT", result);
+    }
+
+    @Test
+    void concurrentChecksModifiedFiles() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "x");
+        commitAll("initial");
+        tag("1.0.0");
+        writeFile("src/Main.java", "changed");
+        commitAll("modified");
+
+        var processor = new MavenStyleTagProcessor().concurrentChecks(true);
+        var evaluator = createEvaluator().matchingGlob("**");
+        var result = processor.version(evaluator, "1.0.0", "1.0.0");
+
+        assertEquals("1.0.1-SNAPSHOT", result);
+    }
+
+    @Test
+    void concurrentChecksClean() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "x");
+        writeFile("test/Test.java", "x");
+        commitAll("initial");
+        tag("1.0.0");
+        writeFile("test/Test.java", "changed");
+        commitAll("modified");
+
+        var processor = new MavenStyleTagProcessor().concurrentChecks(true);
+        var evaluator = createEvaluator().matchingGlob("src/**");
+        var result = processor.version(evaluator, "1.0.0", "1.0.0");
+
+        assertEquals("1.0.0", result);
+    }
+
     // --- Version increment correctness ---
 
     @Test
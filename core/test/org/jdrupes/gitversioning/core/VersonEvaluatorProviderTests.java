@@ -1,14 +1,56 @@
 package org.jdrupes.gitversioning.core;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.submodule.SubmoduleWalk.IgnoreSubmoduleMode;
+import org.eclipse.jgit.util.SystemReader;
+import org.jdrupes.gitversioning.api.Explanation;
+import org.jdrupes.gitversioning.api.Explanation.Candidate;
+import org.jdrupes.gitversioning.api.Explanation.Change;
+import org.jdrupes.gitversioning.api.Explanation.ChangeKind;
+import org.jdrupes.gitversioning.api.Explanation.Outcome;
+import org.jdrupes.gitversioning.api.MetricsListener.Counter;
+import org.jdrupes.gitversioning.api.MetricsListener.Phase;
+import org.jdrupes.gitversioning.api.UntrackedFiles;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -42,6 +84,10 @@ class VersonEvaluatorProviderTests {
         }
     }
 
+    /* default */ VersionEvaluatorProvider newProvider() {
+        return new VersionEvaluatorProvider();
+    }
+
     private void initRepo() throws Exception {
         git = Git.init().setInitialBranch("main")
             .setDirectory(tempDir.toFile()).call();
@@ -84,7 +130,7 @@ class VersonEvaluatorProviderTests {
         writeFile("README.md", "# Readme updated");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("*.java");
 
@@ -110,7 +156,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/readme.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**/*.java");
 
@@ -128,7 +174,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/Main.java", "class Main { updated }");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("*.txt");
 
@@ -147,7 +193,7 @@ class VersonEvaluatorProviderTests {
         writeFile("test/Test.java", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("src/**");
 
@@ -172,7 +218,7 @@ class VersonEvaluatorProviderTests {
         writeFile("README.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingRegex(".*Test.*");
 
@@ -197,7 +243,7 @@ class VersonEvaluatorProviderTests {
         writeFile("d.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingRegex(".*\\.java");
 
@@ -221,7 +267,7 @@ class VersonEvaluatorProviderTests {
         writeFile("README.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingAntPattern("src/**");
 
@@ -244,7 +290,7 @@ class VersonEvaluatorProviderTests {
         writeFile("config/readme.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingAntPattern("config/*.properties");
 
@@ -266,7 +312,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/test/CoreTest.java", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingAntPattern("src/main/**");
 
@@ -290,7 +336,7 @@ class VersonEvaluatorProviderTests {
         writeFile("config/app.yml", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**/*.java")
             .matchingGlob("**/*.md");
@@ -315,7 +361,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/readme.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .subDirectory(Path.of("src", "main"));
 
@@ -339,7 +385,7 @@ class VersonEvaluatorProviderTests {
         git.add().addFilepattern(".").call();
 
         var absolutePath = tempDir.resolve("lib").resolve("core");
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .subDirectory(absolutePath);
 
@@ -352,7 +398,7 @@ class VersonEvaluatorProviderTests {
         initRepo();
 
         var outsidePath = Path.of("/tmp/outside");
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         assertThrows(IllegalArgumentException.class,
@@ -372,7 +418,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/Main.java", "class Main { modified }");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -390,7 +436,7 @@ class VersonEvaluatorProviderTests {
 
         writeFile("src/NewFile.java", "class NewFile {}");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -411,7 +457,7 @@ class VersonEvaluatorProviderTests {
         git.add().addFilepattern(".").call();
         writeFile("c.txt", "new");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -431,7 +477,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/guide.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**/*.java");
 
@@ -454,7 +500,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/guide.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingRegex(".*Test.*");
 
@@ -477,7 +523,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/readme.md", "changed");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .subDirectory(Path.of("src", "test"));
 
@@ -486,6 +532,252 @@ class VersonEvaluatorProviderTests {
         assertEquals(Path.of("src", "test", "Test.java"), dirty.get(0));
     }
 
+    @Test
+    void dirtyFilesParallelStatus() throws Exception {
+        initRepo();
+
+        writeFile("README.md", "v1");
+        writeFile("moduleA/src/A.java", "v1");
+        writeFile("moduleA/src/A2.java", "v1");
+        writeFile("moduleB/B.java", "v1");
+        writeFile("gone/G.java", "v1");
+        commitAll("initial");
+
+        writeFile("README.md", "v2");
+        writeFile("moduleA/src/A.java", "v2");
+        writeFile("moduleA/new/N.java", "new");
+        writeFile("untracked/U.java", "new");
+        writeFile("top.txt", "new");
+        Files.delete(tempDir.resolve("moduleB/B.java"));
+        Files.delete(tempDir.resolve("gone/G.java"));
+        Files.delete(tempDir.resolve("gone"));
+        writeFile("moduleB/B2.java", "new");
+        git.add().addFilepattern("moduleB/B2.java").call();
+
+        var sequential = newProvider()
+            .repository(repository).dirtyFiles().sorted().toList();
+        var parallel = newProvider()
+            .repository(repository).statusParallelism(4).dirtyFiles()
+            .sorted().toList();
+        assertEquals(8, sequential.size());
+        assertEquals(sequential, parallel);
+
+        var moduleA = newProvider()
+            .repository(repository).statusParallelism(4)
+            .subDirectory(Path.of("moduleA")).dirtyFiles().sorted().toList();
+        assertEquals(List.of(Path.of("moduleA/new/N.java"),
+            Path.of("moduleA/src/A.java")), moduleA);
+
+        // Same result as JGit's status
+        var status = git.status().call();
+        var expected = new TreeSet<String>(status.getUncommittedChanges());
+        expected.addAll(status.getUntracked());
+        assertEquals(expected, new TreeSet<>(new WorktreeStatus(repository)
+            .parallelism(4).dirtyPaths().toList()));
+    }
+
+    private static List<Path> awaitDirty(VersionEvaluatorProvider evaluator,
+            List<Path> expected) throws InterruptedException {
+        // File system events are delivered asynchronously
+        List<Path> dirty = List.of();
+        for (int i = 0; i < 100; i++) {
+            dirty = evaluator.dirtyFiles().toList();
+            if (dirty.equals(expected)) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        return dirty;
+    }
+
+    @Test
+    void dirtyFilesTracked() throws Exception {
+        initRepo();
+
+        writeFile("README.md", "v1");
+        writeFile("moduleA/src/A.java", "v1");
+        commitAll("initial");
+
+        var evaluator = newProvider()
+            .repository(repository).trackDirtyFiles(true);
+        assertEquals(List.of(), evaluator.dirtyFiles().toList());
+
+        writeFile("moduleA/src/A.java", "v2");
+        writeFile("moduleA/new/N.java", "new");
+        assertEquals(List.of(Path.of("moduleA/new/N.java"),
+            Path.of("moduleA/src/A.java")), awaitDirty(evaluator,
+                List.of(Path.of("moduleA/new/N.java"),
+                    Path.of("moduleA/src/A.java"))));
+
+        // Reverting the change makes the file clean again
+        writeFile("moduleA/src/A.java", "v1");
+        assertEquals(List.of(Path.of("moduleA/new/N.java")),
+            awaitDirty(evaluator, List.of(Path.of("moduleA/new/N.java"))));
+
+        // Committing updates the index and HEAD
+        commitAll("second");
+        assertEquals(List.of(), awaitDirty(evaluator, List.of()));
+
+        // Closing the evaluator stops the tracker
+        var workTree = repository.getWorkTree().toPath().toAbsolutePath()
+            .normalize();
+        assertTrue(DirtyFilesTracker.trackedWorkTrees().contains(workTree));
+        evaluator.close();
+        assertFalse(DirtyFilesTracker.trackedWorkTrees().contains(workTree));
+    }
+
+    @Test
+    void watcherSkipsIgnoredDirectories() throws Exception {
+        initRepo();
+        writeFile(".gitignore", "target/\nbuild/\n");
+        writeFile("src/A.java", "v1");
+        writeFile("target/classes/A.class", "x");
+        commitAll("initial");
+
+        var workTree = repository.getWorkTree().toPath().toAbsolutePath();
+        try (var watcher = new WorktreeWatcher(repository)) {
+            assertTrue(watcher.watchedDirectories()
+                .contains(workTree.resolve("src")));
+            assertTrue(watcher.watchedDirectories().stream()
+                .noneMatch(d -> d.startsWith(workTree.resolve("target"))));
+
+            // Directories created later
+            Files.createDirectories(workTree.resolve("build/classes"));
+            Files.createDirectories(workTree.resolve("gen/sub"));
+            var genSub = workTree.resolve("gen/sub");
+            for (int i = 0; i < 100
+                && !watcher.watchedDirectories().contains(genSub); i++) {
+                watcher.collect(Duration.ofMillis(100));
+            }
+            assertTrue(watcher.watchedDirectories().contains(genSub));
+            assertTrue(watcher.watchedDirectories().stream()
+                .noneMatch(d -> d.startsWith(workTree.resolve("build"))));
+
+            // Directories that are no longer ignored
+            writeFile(".gitignore", "build/\n");
+            var classes = workTree.resolve("target/classes");
+            awaitWatched(watcher, classes, true);
+            assertTrue(watcher.watchedDirectories().contains(classes));
+
+            // Rules from info/exclude
+            writeFile(".git/info/exclude", "gen/\n");
+            awaitWatched(watcher, genSub, false);
+            assertFalse(watcher.watchedDirectories().contains(genSub));
+            writeFile(".git/info/exclude", "");
+            awaitWatched(watcher, genSub, true);
+            assertTrue(watcher.watchedDirectories().contains(genSub));
+        }
+    }
+
+    private static void awaitWatched(WorktreeWatcher watcher, Path dir,
+            boolean watched) throws InterruptedException {
+        // File system events are delivered asynchronously
+        for (int i = 0; i < 100
+            && watcher.watchedDirectories().contains(dir) != watched; i++) {
+            watcher.collect(Duration.ofMillis(100));
+        }
+    }
+
+    @Test
+    void dirtyFilesUntrackedModes() throws Exception {
+        initRepo();
+
+        writeFile("moduleA/src/A.java", "v1");
+        writeFile("moduleB/B.java", "v1");
+        commitAll("initial");
+
+        writeFile("moduleA/src/A.java", "v2");
+        writeFile("moduleA/src/New.java", "new");
+        writeFile("moduleA/gen/X1.java", "gen");
+        writeFile("moduleA/gen/sub/X2.java", "gen");
+        writeFile("out/big/Y.java", "gen");
+
+        assertEquals(5, newProvider().repository(repository)
+            .untrackedFiles(UntrackedFiles.ALL).dirtyFiles().count());
+        assertEquals(List.of(Path.of("moduleA/src/A.java")),
+            newProvider().repository(repository)
+                .untrackedFiles(UntrackedFiles.NONE).dirtyFiles().toList());
+
+        var all = newProvider().repository(repository)
+            .subDirectory(Path.of("moduleA")).dirtyFiles().sorted().toList();
+        assertEquals(4, all.size());
+        for (int parallelism : new int[] { 1, 4 }) {
+            assertEquals(all, newProvider()
+                .repository(repository).statusParallelism(parallelism)
+                .untrackedFiles(UntrackedFiles.SCOPED)
+                .subDirectory(Path.of("moduleA")).dirtyFiles().sorted()
+                .toList());
+            assertEquals(List.of(Path.of("moduleA/gen/X1.java"),
+                Path.of("moduleA/src/A.java"),
+                Path.of("moduleA/src/New.java")),
+                newProvider().repository(repository)
+                    .statusParallelism(parallelism)
+                    .untrackedFiles(UntrackedFiles.FIRST_MATCH)
+                    .matchingGlob("moduleA/**/*.java").dirtyFiles().sorted()
+                    .toList());
+        }
+    }
+
+    @Test
+    void dirtyFilesSubmodules() throws Exception {
+        initRepo();
+        writeFile(".gitignore", "upstream/\n");
+        writeFile("moduleA/A.java", "v1");
+        commitAll("initial");
+
+        // Upstream repository for the submodule, ignored in main repo
+        try (var upstream = Git.init().setInitialBranch("main")
+            .setDirectory(tempDir.resolve("upstream").toFile()).call()) {
+            Files.writeString(tempDir.resolve("upstream/Lib.java"), "v1");
+            upstream.add().addFilepattern(".").call();
+            upstream.commit().setMessage("lib").setAuthor("Test",
+                "test@test.com").setCommitter("Test", "test@test.com").call();
+        }
+        git.submoduleAdd().setPath("libs/sub")
+            .setURI(tempDir.resolve("upstream").toUri().toString()).call()
+            .close();
+        commitAll("add submodule");
+        writeFile("libs/sub/Lib.java", "v2");
+
+        var sub = Path.of("libs/sub");
+        assertTrue(newProvider().repository(repository)
+            .ignoreSubmodules(IgnoreSubmoduleMode.NONE).dirtyFiles().toList()
+            .contains(sub));
+        assertTrue(newProvider().repository(repository)
+            .ignoreSubmodules(IgnoreSubmoduleMode.DIRTY).dirtyFiles()
+            .findAny().isEmpty());
+        assertTrue(newProvider().repository(repository)
+            .ignoreSubmodules(IgnoreSubmoduleMode.ALL).dirtyFiles()
+            .findAny().isEmpty());
+        assertEquals(List.of(sub), newProvider()
+            .repository(repository).ignoreSubmodules(IgnoreSubmoduleMode.NONE)
+            .scopedSubmodules(true).subDirectory(Path.of("libs"))
+            .dirtyFiles().toList());
+        assertEquals(List.of(sub), newProvider().repository(repository)
+            .statusParallelism(4).ignoreSubmodules(IgnoreSubmoduleMode.NONE)
+            .dirtyFiles().toList());
+
+        // Also when the dirty files are tracked
+        try (var tracking = newProvider().repository(repository)
+            .trackDirtyFiles(true)) {
+            tracking.ignoreSubmodules(IgnoreSubmoduleMode.ALL);
+            assertTrue(tracking.dirtyFiles().findAny().isEmpty());
+            tracking.ignoreSubmodules(IgnoreSubmoduleMode.NONE);
+            assertEquals(List.of(sub), tracking.dirtyFiles().toList());
+        }
+
+        // Submodules outside the scope are not inspected at all
+        var moduleA = List.of("moduleA".getBytes(StandardCharsets.UTF_8));
+        assertFalse(new WorktreeStatus(repository)
+            .scope(moduleA, p -> p.startsWith("moduleA/"))
+            .submodules(IgnoreSubmoduleMode.NONE, true).dirtyPaths()
+            .toList().contains("libs/sub"));
+        assertTrue(new WorktreeStatus(repository)
+            .scope(moduleA, p -> p.startsWith("moduleA/"))
+            .submodules(IgnoreSubmoduleMode.NONE, false).dirtyPaths()
+            .toList().contains("libs/sub"));
+    }
+
     // --- modifiedFiles tests ---
 
     @Test
@@ -500,7 +792,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/Main.java", "v2");
         commitAll("v2");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -526,7 +818,7 @@ class VersonEvaluatorProviderTests {
         writeFile("c.java", "v2");
         commitAll("commit b c");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -542,7 +834,7 @@ class VersonEvaluatorProviderTests {
         commitAll("initial");
         tag("1.0.0");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         assertTrue(provider.modifiedFiles().toList().isEmpty());
@@ -561,7 +853,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/Config.yml", "v2");
         commitAll("v2");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**/*.java");
 
@@ -582,7 +874,7 @@ class VersonEvaluatorProviderTests {
         writeFile("new.java", "x");
         commitAll("swap");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -602,7 +894,7 @@ class VersonEvaluatorProviderTests {
         writeFile("renamed.txt", "content");
         commitAll("renamed");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -627,7 +919,7 @@ class VersonEvaluatorProviderTests {
         writeFile("b.txt", "new");
         commitAll("v3");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .matchingGlob("**");
 
@@ -649,7 +941,7 @@ class VersonEvaluatorProviderTests {
         writeFile("src/test/Test.java", "v2");
         commitAll("v2");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository)
             .subDirectory(Path.of("src", "test"));
 
@@ -658,6 +950,422 @@ class VersonEvaluatorProviderTests {
         assertEquals(Path.of("src", "test", "Test.java"), modified.get(0));
     }
 
+    @Test
+    void modifiedFilesWithChangedPathFilters() throws Exception {
+        initRepo();
+
+        writeFile("moduleA/A.java", "v1");
+        writeFile("moduleB/B.java", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+
+        writeFile("moduleB/B.java", "v2");
+        commitAll("v2");
+        writeFile("moduleA/A.java", "v2");
+        commitAll("v3");
+        writeFile("moduleB/B.java", "v3");
+        commitAll("v4");
+
+        // Write commit-graph with changed-path Bloom filters
+        var config = repository.getConfig();
+        config.setBoolean("core", null, "commitGraph", true);
+        config.setBoolean("gc", null, "writeCommitGraph", true);
+        config.setBoolean("gc", null, "writeChangedPaths", true);
+        config.save();
+        git.gc().call();
+
+        // Reading the filters is enabled in JGit's own configuration
+        var jgitConfig = SystemReader.getInstance().getJGitConfig();
+        jgitConfig.setBoolean("commitGraph", null, "readChangedPaths", true);
+        try {
+            try (var revWalk = new RevWalk(repository)) {
+                var head = revWalk.parseCommit(repository.resolve("HEAD"));
+                assertNotNull(head.getChangedPathFilter(revWalk));
+            }
+
+            // Only v3 changes moduleA, v4 and v2 must not be diffed
+            var metrics = new AggregatingMetricsListener();
+            var provider = newProvider()
+                .repository(repository)
+                .subDirectory(Path.of("moduleA"))
+                .metricsListener(metrics);
+            assertEquals(List.of(Path.of("moduleA", "A.java")),
+                provider.modifiedFiles().toList());
+            var counted = provider.getClass() == VersionEvaluatorProvider.class;
+            if (counted) {
+                assertEquals(1, metrics.count(Counter.TREES_DIFFED));
+            }
+
+            // No commit changes moduleD, nothing must be diffed
+            metrics = new AggregatingMetricsListener();
+            provider = newProvider()
+                .repository(repository)
+                .matchingGlob("moduleD/**")
+                .metricsListener(metrics);
+            assertTrue(provider.modifiedFiles().toList().isEmpty());
+            if (counted) {
+                assertEquals(0, metrics.count(Counter.TREES_DIFFED));
+
+                // Without a file selection, every commit is diffed
+                metrics = new AggregatingMetricsListener();
+                newProvider().repository(repository).metricsListener(metrics)
+                    .modifiedFiles().toList();
+                assertEquals(3, metrics.count(Counter.TREES_DIFFED));
+            }
+        } finally {
+            jgitConfig.unset("commitGraph", null, "readChangedPaths");
+        }
+    }
+
+    @Test
+    void modifiedFilesWithChangedPathsIndex() throws Exception {
+        initRepo();
+
+        writeFile("moduleA/A.java", "v1");
+        writeFile("moduleB/B.java", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+
+        writeFile("moduleB/B.java", "v2");
+        commitAll("v2");
+        writeFile("moduleA/A.java", "v2");
+        commitAll("v3");
+
+        // First evaluation fills the index
+        var provider = newProvider()
+            .repository(repository).changedPathsIndex(true)
+            .matchingGlob("**");
+        assertEquals(2, provider.modifiedFiles().count());
+        try (var index = ChangedPathsIndex.forFile(repository.getDirectory()
+            .toPath().resolve("gitversioning").resolve("changed-paths"))) {
+            assertTrue(index.contains(repository.resolve("HEAD")));
+        }
+
+        // Subsequent evaluations use it
+        provider = newProvider()
+            .repository(repository).changedPathsIndex(true)
+            .subDirectory(Path.of("moduleB"));
+        assertEquals(List.of(Path.of("moduleB", "B.java")),
+            provider.modifiedFiles().toList());
+        provider = newProvider()
+            .repository(repository).changedPathsIndex(true)
+            .subDirectory(Path.of("moduleC"));
+        assertTrue(provider.modifiedFiles().toList().isEmpty());
+    }
+
+    @Test
+    void modifiedFilesCancelledByInterrupt() throws Exception {
+        initRepo();
+
+        writeFile("file.txt", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+        writeFile("file.txt", "v2");
+        commitAll("v2");
+
+        var provider = newProvider()
+            .repository(repository);
+        Thread.currentThread().interrupt();
+        try (var files = provider.modifiedFiles()) {
+            assertThrows(CancellationException.class,
+                () -> files.findAny());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void asyncEvaluation() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+        writeFile("src/Main.java", "v2");
+        commitAll("v2");
+        writeFile("src/Other.java", "dirty");
+
+        var provider = newProvider().repository(repository);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            assertEquals("1.0.1-SNAPSHOT",
+                provider.versionAsync(executor).get());
+            assertEquals(List.of(Path.of("src/Other.java")),
+                provider.dirtyFilesAsync(executor).get());
+            assertEquals(List.of(Path.of("src/Main.java")),
+                provider.modifiedFilesAsync(executor).get());
+
+            // The tag processor's checks use the result of the check
+            // for dirty files done before
+            var metrics = new AggregatingMetricsListener();
+            var concurrent = newProvider().repository(repository)
+                .tagProcessor(
+                    new MavenStyleTagProcessor().concurrentChecks(true))
+                .metricsListener(metrics);
+            assertEquals("1.0.1-SNAPSHOT",
+                concurrent.versionAsync(executor).get());
+            assertEquals(1, metrics.histogram(Phase.STATUS).count());
+
+            // The tag processor can evaluate the version
+            var processor = new MavenStyleTagProcessor();
+            var nested = new boolean[1];
+            var delegating = newProvider().repository(repository)
+                .tagProcessor((evaluator, tag, version) -> {
+                    if (nested[0]) {
+                        return processor.version(evaluator, tag, version);
+                    }
+                    nested[0] = true;
+                    return "from:" + evaluator.version();
+                });
+            assertEquals("from:1.0.1-SNAPSHOT",
+                delegating.versionAsync(executor).get());
+
+            // Cancelling interrupts the evaluation
+            var started = new CountDownLatch(1);
+            var interrupted = new CountDownLatch(1);
+            provider.tagProcessor((evaluator, tag, version) -> {
+                started.countDown();
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new CancellationException("Interrupted");
+                }
+                return version;
+            });
+            var future = provider.versionAsync(executor);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            assertThrows(CancellationException.class, future::get);
+        }
+    }
+
+    // --- anyChange tests ---
+
+    @Test
+    void anyChangeDetectsDirtyAndModified() throws Exception {
+        initRepo();
+
+        writeFile("src/Main.java", "v1");
+        writeFile("doc/README.md", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+
+        var provider = newProvider()
+            .repository(repository).matchingGlob("src/**");
+        assertFalse(provider.anyChange());
+
+        writeFile("src/Main.java", "v2");
+        assertTrue(provider.anyChange());
+
+        commitAll("v2");
+        assertTrue(provider.anyChange());
+
+        var other = newProvider()
+            .repository(repository).matchingGlob("doc/**");
+        assertFalse(other.anyChange());
+    }
+
+    @Test
+    void checkStatisticsOrderCheapestFirst() throws Exception {
+        initRepo();
+        var statistics = CheckStatistics.forRepository(repository);
+        assertSame(statistics, CheckStatistics.forRepository(repository));
+        statistics.record(CheckStatistics.Check.DIRTY_FILES, 1000);
+        statistics.record(CheckStatistics.Check.MODIFIED_FILES, 100);
+        assertEquals(List.of(CheckStatistics.Check.MODIFIED_FILES,
+            CheckStatistics.Check.DIRTY_FILES), statistics.cheapestFirst());
+
+        // Averages adapt to new samples
+        for (int i = 0; i < 20; i++) {
+            statistics.record(CheckStatistics.Check.MODIFIED_FILES, 10_000);
+        }
+        assertEquals(CheckStatistics.Check.DIRTY_FILES,
+            statistics.cheapestFirst().get(0));
+
+        // The statistics of the least recently used repositories are dropped
+        for (int i = 0; i < CheckStatistics.MAX_REPOSITORIES; i++) {
+            CheckStatistics.forRepository(new InMemoryRepository(
+                new DfsRepositoryDescription("other" + i)));
+        }
+        assertNotSame(statistics, CheckStatistics.forRepository(repository));
+    }
+
+    // --- versionUpdates tests ---
+
+    /**
+     * Collects the received items, requests items one by one.
+     */
+    private static final class CollectingSubscriber
+            implements Flow.Subscriber<String> {
+        private final BlockingQueue<String> items = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            items.add("error: " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            items.add("complete");
+        }
+
+        private String next() throws InterruptedException {
+            subscription.request(1);
+            return items.poll(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Records the generation reported by the publisher's cycles.
+     */
+    private static final class Cycles implements LongConsumer {
+        private long generation;
+
+        @Override
+        public synchronized void accept(long generation) {
+            this.generation = generation;
+            notifyAll();
+        }
+
+        private synchronized long current() {
+            return generation;
+        }
+
+        /**
+         * Waits until the subscribers have been brought up to date
+         * after a change that has been reported after the given
+         * generation.
+         */
+        private synchronized long awaitAfter(long previous)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (generation <= previous) {
+                long left = deadline - System.nanoTime();
+                assertTrue(left > 0, "No change reported");
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return generation;
+        }
+    }
+
+    @Test
+    void versionUpdatesPublishesChanges() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("initial");
+        tag("1.0.0");
+
+        var cycles = new Cycles();
+        var publisher = ((VersionPublisher) newProvider()
+            .repository(repository)
+            .versionUpdatesDebounce(Duration.ofMillis(50)).versionUpdates())
+                .cycleListener(cycles);
+        var subscriber = new CollectingSubscriber();
+        publisher.subscribe(subscriber);
+        assertEquals("1.0.0", subscriber.next());
+
+        // Without demand, nothing is delivered
+        long generation = cycles.current();
+        writeFile("src/Main.java", "v2");
+        cycles.awaitAfter(generation);
+        assertTrue(subscriber.items.isEmpty());
+        assertEquals("1.0.1-SNAPSHOT", subscriber.next());
+
+        // Unchanged version is not published again
+        subscriber.subscription.request(1);
+        generation = cycles.current();
+        writeFile("src/Other.java", "new");
+        cycles.awaitAfter(generation);
+        assertTrue(subscriber.items.isEmpty());
+
+        commitAll("second");
+        tag("1.1.0");
+        assertEquals("1.1.0", subscriber.items.poll(10, TimeUnit.SECONDS));
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    void versionUpdatesSurviveEvaluationErrors() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("initial");
+        tag("1.0.0");
+
+        // Fails like an evaluation while git holds the index's lock
+        var failures = new AtomicInteger(2);
+        var evaluator = new VersionEvaluatorProvider() {
+            @Override
+            public String version() {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("index.lock exists");
+                }
+                return super.version();
+            }
+        }.repository(repository);
+        var publisher = new VersionPublisher(evaluator, repository,
+            p -> true, Duration.ofMillis(50));
+        var subscriber = new CollectingSubscriber();
+        publisher.subscribe(subscriber);
+        assertEquals("1.0.0", subscriber.next());
+        assertTrue(failures.get() < 0);
+
+        failures.set(1);
+        subscriber.subscription.request(1);
+        commitAll("second");
+        tag("1.1.0");
+        assertEquals("1.1.0", subscriber.items.poll(10, TimeUnit.SECONDS));
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    void versionUpdatesRejectsDuplicateSubscription() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("initial");
+
+        var publisher = newProvider().repository(repository)
+            .versionUpdates();
+        var signals = new ArrayList<String>();
+        var subscriptions = new ArrayList<Flow.Subscription>();
+        var subscriber = new Flow.Subscriber<String>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                signals.add("subscribe");
+                subscriptions.add(subscription);
+            }
+
+            @Override
+            public void onNext(String item) {
+                signals.add("next");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add("error");
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        };
+        publisher.subscribe(subscriber);
+        publisher.subscribe(subscriber);
+        subscriptions.get(0).cancel();
+        assertEquals(List.of("subscribe", "subscribe", "error"), signals);
+    }
+
     // --- No filter tests (all files reported) ---
 
     @Test
@@ -674,7 +1382,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/guide.md", "# Guide modified");
         git.add().addFilepattern(".").call();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         var dirty = provider.dirtyFiles().sorted().toList();
@@ -692,7 +1400,7 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/new.md", "new");
         writeFile("config/app.yml", "new");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         var dirty = provider.dirtyFiles().sorted().toList();
@@ -714,20 +1422,592 @@ class VersonEvaluatorProviderTests {
         writeFile("docs/guide.md", "v2");
         commitAll("v2");
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         var modified = provider.modifiedFiles().sorted().toList();
         assertEquals(3, modified.size());
     }
 
+    // --- Evaluation at a revision ---
+
+    @Test
+    void versionAtRevision() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+        var tagged = repository.resolve("HEAD");
+        git.checkout().setCreateBranch(true).setName("feature/x").call();
+        writeFile("src/Main.java", "v2");
+        commitAll("v2");
+        git.checkout().setName("main").call();
+        writeFile("src/Other.java", "dirty");
+
+        assertEquals("main", newProvider().repository(repository).branch());
+        assertEquals("1.0.1-SNAPSHOT",
+            newProvider().repository(repository).version());
+
+        // Work tree is ignored
+        var provider = newProvider().repository(repository).at("main");
+        assertTrue(provider.dirtyFiles().toList().isEmpty());
+        assertEquals("main", provider.branch());
+        assertEquals("1.0.0", provider.version());
+
+        // Other branch, without checkout
+        provider = newProvider().repository(repository).at("feature/x");
+        assertEquals("feature/x", provider.branch());
+        assertEquals(List.of(Path.of("src", "Main.java")),
+            provider.modifiedFiles().toList());
+        assertEquals("1.0.1-feature_x-SNAPSHOT", provider.version());
+
+        // Commits
+        provider = newProvider().repository(repository).at("feature/x~1");
+        assertEquals(tagged.name(), provider.branch());
+        assertEquals("1.0.0", provider.version());
+        provider = newProvider().repository(repository)
+            .at(repository.resolve("feature/x").name());
+        assertEquals("1.0.1-" + repository.resolve("feature/x").name()
+            + "-SNAPSHOT", provider.version());
+
+        // Remote tracking branch without a configured remote
+        var remoteRef = repository.updateRef("refs/remotes/unknown/x");
+        remoteRef.setNewObjectId(repository.resolve("feature/x"));
+        remoteRef.update();
+        provider = newProvider().repository(repository)
+            .at("refs/remotes/unknown/x");
+        assertEquals("unknown/x", provider.branch());
+        assertEquals("1.0.1-unknown_x-SNAPSHOT", provider.version());
+        assertEquals(Map.of("refs/remotes/unknown/x",
+            "1.0.1-unknown_x-SNAPSHOT"), newProvider().repository(repository)
+                .versions(List.of("refs/remotes/unknown/x")));
+
+        var unknown = newProvider().repository(repository).at("unknown");
+        assertThrows(IllegalArgumentException.class, () -> unknown.version());
+    }
+
+    // --- Version history ---
+
+    @Test
+    void historyMatchesVersionAtEachCommit() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        writeFile("doc/README.md", "v1");
+        commitAll("c1");
+        var untaggedRoot = repository.resolve("HEAD");
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        tag("1.0.0");
+        writeFile("src/Main.java", "v3");
+        commitAll("c3");
+
+        // Branch started before the release
+        git.checkout().setCreateBranch(true).setName("feature").call();
+        writeFile("doc/Guide.md", "v1");
+        commitAll("f1");
+        git.checkout().setName("main").call();
+        writeFile("doc/README.md", "v3");
+        commitAll("c4");
+        tag("1.1.0");
+        writeFile("doc/Other.md", "v1");
+        commitAll("c5");
+        git.merge().include(repository.resolve("feature"))
+            .setMessage("merge").call();
+        writeFile("src/Main.java", "v4");
+        commitAll("c6");
+
+        var processor = new MavenStyleTagProcessor().ignoredBranches(".*");
+        for (var glob : List.of("**", "src/**", "doc/**")) {
+            List<org.jdrupes.gitversioning.api.CommitVersion> history;
+            try (var versions = newProvider().repository(repository)
+                .tagProcessor(processor).matchingGlob(glob).history()) {
+                history = versions.toList();
+            }
+            assertEquals(8, history.size());
+            assertEquals(untaggedRoot, history.get(0).commit());
+            for (var entry : history) {
+                assertEquals(newProvider().repository(repository)
+                    .tagProcessor(processor).matchingGlob(glob)
+                    .at(entry.commit().name()).version(), entry.version(),
+                    glob + " at " + entry.commit().name());
+            }
+            assertEquals(newProvider().repository(repository)
+                .tagProcessor(processor).matchingGlob(glob).version(),
+                history.get(history.size() - 1).version());
+        }
+
+        // Merge of a branch started before the release and changing
+        // only documentation
+        try (var versions = newProvider().repository(repository)
+            .tagProcessor(processor).matchingGlob("src/**")
+            .at("HEAD~1").history()) {
+            var history = versions.toList();
+            assertEquals("1.1.0", history.get(history.size() - 1).version());
+        }
+    }
+
+    @Test
+    void historyEvaluatorProvidesVersion() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+
+        // A processor that obtains the version from the evaluator
+        var processor = new MavenStyleTagProcessor();
+        var delegating = new Object() {
+            private boolean delegated;
+
+            private String version(VersionEvaluator evaluator, String tag,
+                    String version) throws IOException, GitAPIException {
+                if (delegated) {
+                    return processor.version(evaluator, tag, version);
+                }
+                delegated = true;
+                try {
+                    return "from:" + evaluator.version();
+                } finally {
+                    delegated = false;
+                }
+            }
+        };
+        try (var versions = newProvider().repository(repository)
+            .tagProcessor(delegating::version).history()) {
+            assertEquals(List.of("from:1.0.0", "from:1.0.1-SNAPSHOT"),
+                versions.map(v -> v.version()).toList());
+        }
+        assertEquals(Map.of("HEAD", "from:1.0.1-SNAPSHOT"),
+            newProvider().repository(repository)
+                .tagProcessor(delegating::version)
+                .versions(List.of("HEAD")));
+    }
+
+    @Test
+    void versionsOfManyRevisions() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        git.checkout().setCreateBranch(true).setName("feature").call();
+        writeFile("src/Feature.java", "v1");
+        commitAll("f1");
+        git.checkout().setCreateBranch(true).setName("docs")
+            .setStartPoint("main").call();
+        writeFile("doc/README.md", "v1");
+        commitAll("d1");
+        git.checkout().setName("main").call();
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        tag("1.1.0");
+
+        var revisions = List.of("main", "feature", "docs", "1.0.0",
+            "main~1", "feature");
+        for (var glob : List.of("**", "src/**")) {
+            var versions = newProvider().repository(repository)
+                .matchingGlob(glob).versions(revisions);
+            assertEquals(List.of("main", "feature", "docs", "1.0.0",
+                "main~1"), List.copyOf(versions.keySet()));
+            for (var revision : revisions) {
+                assertEquals(newProvider().repository(repository)
+                    .matchingGlob(glob).at(revision).version(),
+                    versions.get(revision), glob + " at " + revision);
+            }
+        }
+        assertEquals("1.1.0", newProvider().repository(repository)
+            .versions(List.of("main")).get("main"));
+        assertEquals("1.0.0", newProvider().repository(repository)
+            .matchingGlob("src/**").versions(List.of("docs")).get("docs"));
+        assertThrows(IllegalArgumentException.class,
+            () -> newProvider().repository(repository)
+                .versions(List.of("main", "unknown")));
+    }
+
+    // --- Metrics ---
+
+    @Test
+    void metricsAreReported() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        tag("no-version");
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        writeFile("src/Main.java", "v3");
+
+        var metrics = new AggregatingMetricsListener();
+        var provider = newProvider().repository(repository);
+        provider.metricsListener(metrics);
+        assertEquals("1.0.1-SNAPSHOT", provider.version());
+        assertEquals(2, metrics.count(Counter.TAGS_LISTED));
+        assertEquals(1, metrics.count(Counter.TAGS_PARSED));
+        assertEquals(2, metrics.count(Counter.COMMITS_WALKED));
+        assertEquals(1, metrics.count(Counter.CACHE_MISSES));
+        assertEquals(1, metrics.histogram(Phase.TAG_LISTING).count());
+        assertEquals(1, metrics.histogram(Phase.REACHABILITY).count());
+
+        metrics.reset();
+        try (var files = provider.dirtyFiles()) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(1, metrics.histogram(Phase.STATUS).count());
+        try (var files = provider.modifiedFiles()) {
+            assertEquals(1, files.count());
+        }
+        var modified = metrics.histogram(Phase.MODIFIED_FILES);
+        assertEquals(1, modified.count());
+        assertEquals(modified.max(), modified.percentile(100));
+        assertEquals(1, metrics.count(Counter.CACHE_HITS));
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+        if (provider.getClass() == VersionEvaluatorProvider.class) {
+            assertEquals(1, metrics.count(Counter.FILES_STATED));
+            assertEquals(2, metrics.count(Counter.COMMITS_WALKED));
+            assertEquals(1, metrics.count(Counter.TREES_DIFFED));
+        }
+
+        // Other evaluators do not report to the listener
+        metrics.reset();
+        newProvider().repository(repository).version();
+        assertEquals(0, metrics.count(Counter.TAGS_LISTED));
+        try (var history = provider.history()) {
+            assertEquals(2, history.count());
+        }
+        assertEquals(1, metrics.histogram(Phase.HISTORY).count());
+    }
+
+    @Test
+    void reachableCommitsCacheIsBounded() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        var heads = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            writeFile("src/Main.java", "v" + (i + 2));
+            commitAll("c" + (i + 2));
+            heads.add(repository.resolve(Constants.HEAD).name());
+        }
+
+        var metrics = new AggregatingMetricsListener();
+        for (var head : heads) {
+            newProvider().repository(repository).at(head)
+                .metricsListener(metrics).version();
+        }
+        assertEquals(heads.size(), metrics.count(Counter.CACHE_MISSES));
+
+        // The most recently used heads are still cached
+        metrics.reset();
+        newProvider().repository(repository).at(heads.get(heads.size() - 1))
+            .metricsListener(metrics).version();
+        assertEquals(0, metrics.count(Counter.CACHE_MISSES));
+
+        // The least recently used heads have been evicted
+        newProvider().repository(repository).at(heads.get(0))
+            .metricsListener(metrics).version();
+        assertEquals(1, metrics.count(Counter.CACHE_MISSES));
+    }
+
+    @Test
+    void flightRecorderEvents() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        writeFile("src/Main.java", "v3");
+
+        var provider = newProvider().repository(repository);
+        var dump = tempDir.resolve("events.jfr");
+        try (var recording = new Recording()) {
+            for (var name : List.of("TagSearch", "Reachability", "Status",
+                "DiffBatch", "TagProcessing")) {
+                recording.enable("org.jdrupes.gitversioning." + name);
+            }
+            recording.start();
+            assertEquals("1.0.1-SNAPSHOT", provider.version());
+            try (var files = provider.modifiedFiles()) {
+                assertEquals(1, files.count());
+            }
+            recording.stop();
+            recording.dump(dump);
+        }
+        var events = RecordingFile.readAllEvents(dump).stream().collect(
+            Collectors.toMap(e -> e.getEventType().getName()
+                .substring("org.jdrupes.gitversioning.".length()), e -> e,
+                (first, second) -> first));
+        var head = repository.resolve(Constants.HEAD).getName();
+        assertEquals(head, events.get("TagSearch").getString("head"));
+        assertEquals("1.0.0", events.get("TagSearch").getString("tag"));
+        assertEquals(1, events.get("TagSearch").getInt("tagsConsidered"));
+        assertEquals(2, events.get("Reachability").getInt("commitsWalked"));
+        assertEquals("1.0.1-SNAPSHOT",
+            events.get("TagProcessing").getString("version"));
+        if (provider.getClass() == VersionEvaluatorProvider.class) {
+            assertEquals(head, events.get("DiffBatch").getString("commit"));
+            assertEquals("status", events.get("Status").getString("method"));
+        }
+    }
+
+    // --- Frozen evaluators ---
+
+    @Test
+    void frozenEvaluatorIsShareable() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        writeFile("doc/README.md", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        writeFile("doc/README.md", "v2");
+        commitAll("c2");
+
+        var provider = newProvider().repository(repository);
+        provider.matchingGlob("src/**");
+        var frozen = provider.freeze();
+        assertNotSame(provider, frozen);
+        assertSame(frozen, frozen.freeze());
+        assertThrows(IllegalStateException.class,
+            () -> frozen.matchingGlob("doc/**"));
+        assertThrows(IllegalStateException.class,
+            () -> frozen.at("HEAD~1"));
+
+        // The original remains configurable
+        provider.matchingGlob("doc/**");
+        assertEquals("1.0.1-SNAPSHOT", provider.version());
+        assertEquals("1.0.0", frozen.version());
+        assertEquals("1.0.0", frozen.explain().version());
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(frozen::version));
+            }
+            for (var future : futures) {
+                assertEquals("1.0.0", future.get());
+            }
+        }
+
+        // Explanations record their own metrics only
+        var expected = frozen.explain();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<Explanation>>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(frozen::explain));
+            }
+            for (var future : futures) {
+                var explanation = future.get();
+                assertEquals(expected.version(), explanation.version());
+                assertEquals(expected.candidates(),
+                    explanation.candidates());
+                assertEquals(expected.change(), explanation.change());
+                assertEquals(expected.counts().get(Counter.TAGS_LISTED),
+                    explanation.counts().get(Counter.TAGS_LISTED));
+            }
+        }
+    }
+
+    // --- Shallow clones ---
+
+    @Test
+    void shallowClone() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        var c1 = repository.resolve(Constants.HEAD);
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        var c2 = repository.resolve(Constants.HEAD);
+        writeFile("src/Main.java", "v3");
+        commitAll("c3");
+        var database = repository.getObjectDatabase();
+
+        // Tag beyond the shallow boundary
+        database.setShallowCommits(Set.of(c2));
+        VersionEvaluator provider = newProvider().repository(repository);
+        assertTrue(provider.historyTruncated());
+        assertEquals("0.0.0", provider.version());
+        assertTrue(provider.explain().truncated());
+        assertEquals("0.0.0", provider.minimumDepth(2).version());
+        var exc = assertThrows(IllegalStateException.class,
+            () -> newProvider().repository(repository).minimumDepth(3)
+                .version());
+        assertTrue(exc.getMessage().contains("depth of 2"));
+
+        // Tagged commit at the shallow boundary
+        database.setShallowCommits(Set.of(c1));
+        provider = newProvider().repository(repository).minimumDepth(3);
+        assertTrue(provider.historyTruncated());
+        assertEquals("1.0.1-SNAPSHOT", provider.version());
+        assertEquals(List.of(Path.of("src/Main.java")),
+            provider.modifiedFiles().distinct().toList());
+
+        // Deepened
+        database.setShallowCommits(Set.of());
+        provider = newProvider().repository(repository).minimumDepth(10);
+        assertFalse(provider.historyTruncated());
+        assertFalse(provider.explain().truncated());
+        assertEquals("1.0.1-SNAPSHOT", provider.version());
+    }
+
+    // --- Explanations ---
+
+    @Test
+    void explainReportsDerivation() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("c1");
+        tag("1.0.0");
+        tag("no-version");
+        git.checkout().setCreateBranch(true).setName("feature").call();
+        writeFile("src/Main.java", "v2");
+        commitAll("c2");
+        tag("2.0.0");
+        git.checkout().setName("main").call();
+        writeFile("src/Main.java", "v3");
+        commitAll("c3");
+
+        var explanation = newProvider().repository(repository).explain();
+        assertEquals(repository.resolve(Constants.HEAD), explanation.head());
+        assertEquals("1.0.1-SNAPSHOT", explanation.version());
+        assertNull(explanation.failure());
+        assertEquals(List.of(
+            new Candidate("no-version", null, null, Outcome.FILTERED),
+            new Candidate("2.0.0", "2.0.0", repository.resolve("feature"),
+                Outcome.UNREACHABLE),
+            new Candidate("1.0.0", "1.0.0",
+                repository.resolve("1.0.0^{commit}"),
+                Outcome.SELECTED)),
+            explanation.candidates());
+        assertEquals("1.0.0", explanation.selected().get().tag());
+        assertEquals(new Change(ChangeKind.MODIFIED, Path.of("src/Main.java")),
+            explanation.change());
+        // Tags are listed once, the change is recorded while evaluating
+        assertEquals(Long.valueOf(3),
+            explanation.counts().get(Counter.TAGS_LISTED));
+        assertTrue(explanation.durations().containsKey(Phase.TAG_LISTING));
+
+        var json = explanation.toJson();
+        assertTrue(json.startsWith("{\"head\":\""
+            + repository.resolve(Constants.HEAD).name() + "\""));
+        assertTrue(json.contains("{\"tag\":\"no-version\",\"version\":null,"
+            + "\"commit\":null,\"outcome\":\"FILTERED\"}"));
+        assertTrue(json.contains("\"change\":{\"kind\":\"MODIFIED\","));
+        assertTrue(json.contains("\"TAGS_LISTED\":3"));
+        assertTrue(json.endsWith(",\"failure\":null}"));
+
+        // Dirty file at the tagged commit
+        git.checkout().setName("1.0.0").call();
+        writeFile("src/Main.java", "dirty");
+        explanation = newProvider().repository(repository).explain();
+        assertEquals(new Change(ChangeKind.DIRTY, Path.of("src/Main.java")),
+            explanation.change());
+
+        // Unparsable versions are reported
+        explanation = newProvider().repository(repository)
+            .tagFilter(tag -> Optional.of("not.a.version")).explain();
+        assertNull(explanation.version());
+        assertNotNull(explanation.failure());
+        assertEquals(Outcome.UNPARSABLE,
+            explanation.candidates().get(0).outcome());
+    }
+
+    // --- Repositories without work tree ---
+
+    @Test
+    void bareRepositoryUsesHistoryOnly() throws Exception {
+        initRepo();
+        writeFile("src/Main.java", "v1");
+        commitAll("v1");
+        tag("1.0.0");
+        writeFile("src/Main.java", "v2");
+
+        try (var bare = new FileRepositoryBuilder()
+            .setGitDir(repository.getDirectory()).setBare().build()) {
+            var provider = newProvider().repository(bare);
+            assertTrue(provider.dirtyFiles().toList().isEmpty());
+            assertEquals("1.0.0", provider.version());
+            assertThrows(IllegalArgumentException.class,
+                () -> provider.subDirectory(tempDir.resolve("src")));
+        }
+        assertEquals("1.0.1-SNAPSHOT",
+            newProvider().repository(repository).version());
+
+        commitAll("v2");
+        try (var bare = new FileRepositoryBuilder()
+            .setGitDir(repository.getDirectory()).setBare().build()) {
+            var provider = newProvider().repository(bare)
+                .subDirectory(Path.of("src"));
+            assertEquals(List.of(Path.of("src", "Main.java")),
+                provider.modifiedFiles().toList());
+            assertEquals("1.0.1-SNAPSHOT", provider.version());
+        }
+    }
+
+    private static ObjectId commitInMemory(Repository repository,
+            ObjectId parent, String content) throws Exception {
+        try (var inserter = repository.newObjectInserter()) {
+            var tree = new TreeFormatter();
+            tree.append("Main.java", FileMode.REGULAR_FILE, inserter.insert(
+                Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8)));
+            var commit = new CommitBuilder();
+            commit.setTreeId(inserter.insert(tree));
+            if (parent != null) {
+                commit.setParentId(parent);
+            }
+            var ident = new PersonIdent("Test", "test@test.com");
+            commit.setAuthor(ident);
+            commit.setCommitter(ident);
+            commit.setMessage(content);
+            var id = inserter.insert(commit);
+            inserter.flush();
+            var update = repository.updateRef("refs/heads/main");
+            update.setNewObjectId(id);
+            update.forceUpdate();
+            return id;
+        }
+    }
+
+    private static void tagInMemory(Repository repository, String name,
+            ObjectId commit) throws Exception {
+        var update = repository.updateRef(Constants.R_TAGS + name);
+        update.setNewObjectId(commit);
+        update.forceUpdate();
+    }
+
+    @Test
+    void inMemoryRepository() throws Exception {
+        var memRepo = new InMemoryRepository(
+            new DfsRepositoryDescription("in-memory"));
+        var first = commitInMemory(memRepo, null, "v1");
+        memRepo.updateRef(Constants.HEAD).link("refs/heads/main");
+        tagInMemory(memRepo, "1.0.0", first);
+        var second = commitInMemory(memRepo, first, "v2");
+
+        // Selected automatically, works like the JGit provider
+        var evaluator = VersionEvaluator.forRepository(memRepo)
+            .matchingGlob("*.java");
+        assertTrue(evaluator.dirtyFiles().toList().isEmpty());
+        assertEquals(List.of(Path.of("Main.java")),
+            evaluator.modifiedFiles().toList());
+        assertEquals("1.0.1-SNAPSHOT", evaluator.version());
+        assertThrows(UnsupportedOperationException.class,
+            () -> evaluator.versionUpdates());
+
+        tagInMemory(memRepo, "1.1.0", second);
+        assertEquals("1.1.0", VersionEvaluator.forRepository(memRepo)
+            .version());
+    }
+
     // --- Builder pattern & edge cases ---
 
     @Test
     void builderPatternReturnsThis() throws Exception {
         initRepo();
 
-        var provider = new VersionEvaluatorProvider();
+        var provider = newProvider();
 
         assertSame(provider, provider.repository(repository));
         assertSame(provider, provider.matchingGlob("*.java"));
@@ -738,7 +2018,7 @@ class VersonEvaluatorProviderTests {
 
     @Test
     void repositoryNull() {
-        var provider = new VersionEvaluatorProvider();
+        var provider = newProvider();
         assertThrows(NullPointerException.class,
             () -> provider.repository(null));
     }
@@ -747,7 +2027,7 @@ class VersonEvaluatorProviderTests {
     void repositoryGetter() throws Exception {
         initRepo();
 
-        var provider = new VersionEvaluatorProvider()
+        var provider = newProvider()
             .repository(repository);
 
         assertSame(repository, provider.repository());
@@ -0,0 +1,145 @@
+package org.jdrupes.gitversioning.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.api.Git;
+import org.jdrupes.gitversioning.api.RepositoryVersion;
+import org.jdrupes.gitversioning.api.VersionEvaluator;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WorkspaceEvaluationTests {
+
+    @TempDir
+    Path tempDir;
+
+    private List<Path> repositories(boolean tagged) throws Exception {
+        var directories = new ArrayList<Path>();
+        for (int i = 0; i < 8; i++) {
+            var directory = tempDir.resolve("repo" + i);
+            directories.add(directory);
+            try (var git = Git.init().setDirectory(directory.toFile())
+                .setInitialBranch("main").call()) {
+                Files.writeString(directory.resolve("file.txt"), "v1");
+                git.add().addFilepattern(".").call();
+                git.commit().setMessage("c1").setSign(false).call();
+                if (tagged) {
+                    git.tag().setName("1." + i + ".0").setSigned(false)
+                        .call();
+                }
+            }
+        }
+        return directories;
+    }
+
+    @Test
+    void versionsOfManyRepositories() throws Exception {
+        var directories = repositories(true);
+        var noRepository = tempDir.resolve("none");
+        Files.createDirectories(noRepository);
+        directories.add(noRepository);
+
+        Map<Path, RepositoryVersion> results;
+        try (var versions = VersionEvaluator.forRepositories(directories, 3,
+            evaluator -> evaluator.matchingGlob("*.txt"))) {
+            results = versions.collect(
+                Collectors.toMap(RepositoryVersion::directory, v -> v));
+        }
+        assertEquals(directories.size(), results.size());
+        for (int i = 0; i < 8; i++) {
+            var result = results.get(directories.get(i));
+            assertNull(result.failure());
+            assertEquals("1." + i + ".0", result.version());
+        }
+        assertNull(results.get(noRepository).version());
+        assertTrue(
+            results.get(noRepository).failure() instanceof IOException);
+
+        // Closing early cancels the remaining evaluations
+        try (var versions = VersionEvaluator.forRepositories(directories)) {
+            assertTrue(versions.findFirst().isPresent());
+        }
+    }
+
+    @Test
+    void versionsOfManyRepositoriesAreLimited() throws Exception {
+        var directories = repositories(false);
+
+        // At most 3 evaluations are configured at the same time
+        var active = new AtomicInteger();
+        var maxActive = new AtomicInteger();
+        List<RepositoryVersion> results;
+        try (var versions = VersionEvaluator.forRepositories(directories, 3,
+            evaluator -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(),
+                    Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    active.decrementAndGet();
+                }
+            })) {
+            results = versions.toList();
+        }
+        assertEquals(directories.size(), results.size());
+        for (var result : results) {
+            assertNull(result.failure());
+            assertEquals("0.0.0", result.version());
+        }
+        assertTrue(maxActive.get() <= 3);
+    }
+
+    @Test
+    void errorsAreReportedAsFailure() throws Exception {
+        var directories = repositories(false);
+        var failing = directories.get(0);
+        Map<Path, RepositoryVersion> results;
+        try (var versions = VersionEvaluator.forRepositories(directories, 3,
+            evaluator -> {
+                if (evaluator.repository().getWorkTree().toPath()
+                    .equals(failing)) {
+                    throw new AssertionError("Test error");
+                }
+            })) {
+            results = versions.collect(
+                Collectors.toMap(RepositoryVersion::directory, v -> v));
+        }
+        assertEquals(directories.size(), results.size());
+        assertNull(results.get(failing).version());
+        assertTrue(results.get(failing)
+            .failure() instanceof ExecutionException);
+        assertTrue(results.get(failing).failure()
+            .getCause() instanceof AssertionError);
+        assertEquals("0.0.0", results.get(directories.get(1)).version());
+    }
+
+    @Test
+    void evaluatorsAreClosed() throws Exception {
+        var directories = repositories(false);
+        try (var versions = VersionEvaluator.forRepositories(directories, 3,
+            evaluator -> {
+                // Starts a tracker that is released by closing
+                ((VersionEvaluatorProvider) evaluator).trackDirtyFiles(true);
+                try (var files = evaluator.dirtyFiles()) {
+                    assertEquals(0, files.count());
+                }
+            })) {
+            assertTrue(versions.allMatch(v -> v.failure() == null));
+        }
+        var tracked = DirtyFilesTracker.trackedWorkTrees();
+        for (var directory : directories) {
+            assertFalse(tracked.contains(directory.toRealPath()));
+            assertFalse(tracked.contains(directory));
+        }
+    }
+}